@@ -4,6 +4,7 @@ import static judahzone.util.Constants.LEFT;
 import static judahzone.util.Constants.RIGHT;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import judahzone.api.PlayAudio;
@@ -18,23 +19,40 @@ import lombok.Setter;
 @Getter
 public class BasicPlayer implements PlayAudio {
 
+	/** block size of recordings, not necessarily the current JACK period */
 	private static final int N_FRAMES = Constants.bufSize();
 
 	protected final AtomicInteger tapeCounter = new AtomicInteger(0);
+	/** sample position inside the current block when periods and blocks don't line up */
+	protected volatile int offset;
 	@Getter protected volatile boolean playing;              // make visibility safe across threads
 	protected Recording recording = new Recording();
+	/** streaming mode: plays from a memory-mapped file instead of the recording, null if off */
+	protected volatile MappedTrack stream;
+	/** streaming read-ahead, null to read the mapping on the RT thread */
+	protected volatile StreamFeed feed;
+	protected Prefetcher prefetcher;
 	protected Asset asset;
 	protected File file;
 	@Setter protected float amp = 0.5f;
-	@Setter protected Type type = Type.ONE_SHOT;
+	protected Type type = Type.ONE_SHOT;
 	@Setter protected Played played;
 
 	@Override public void play(boolean onOrOff) {
 	    this.playing = onOrOff;
 	}
 
+	@Override public void setType(Type type) {
+		this.type = type;
+		StreamFeed f = feed;
+		if (f != null)
+			f.setLoop(type == Type.LOOP);
+	}
+
 	public final void clear() {
 		playing = false;
+		stream = null;
+		dropFeed();
         setRecording(null);
         file = null;
     }
@@ -45,8 +63,10 @@ public class BasicPlayer implements PlayAudio {
 		return file.getName().replace(".wav", "");
 	}
 
+	/** @return length in blocks of N_FRAMES */
 	@Override public final int getLength() {
-		return recording.size();
+		MappedTrack s = stream;
+		return s == null ? recording.size() : s.blocks(N_FRAMES);
 	}
 
 	@Override public final float seconds() {
@@ -55,50 +75,125 @@ public class BasicPlayer implements PlayAudio {
 
 	@Override public final void rewind() {
 		tapeCounter.set(0);
+		offset = 0;
+		seek(0);
 		if (played != null)
 			played.setHead(0);
 	}
 
 	@Override public final void setRecording(Asset asset) { // TODO deleted MainFrame.update(this);
 		rewind();
+		stream = null;
+		dropFeed();
 		recording = asset.recording();
 		this.asset = asset;
 	}
 
+	/** Stream a WAV file from a read-only mapping instead of decoding it (playback can start at once). */
+	public final void setStream(File wav) throws IOException {
+		setStream(MappedTrack.wav(wav), null);
+	}
+
+	/** Stream a WAV file, read ahead by the given worker so page faults stay off the RT thread. */
+	public final void setStream(File wav, Prefetcher prefetch) throws IOException {
+		setStream(MappedTrack.wav(wav), prefetch);
+	}
+
+	public final void setStream(MappedTrack track, Prefetcher prefetch) {
+		rewind();
+		dropFeed();
+		recording = new Recording();
+		asset = null;
+		file = track.getFile();
+		prefetcher = prefetch;
+		feed = prefetch == null ? null : prefetch.feed(track, type == Type.LOOP);
+		stream = track;
+	}
+
+	private void dropFeed() {
+		StreamFeed old = feed;
+		feed = null;
+		if (old != null)
+			old.close();
+	}
+
+	/** point the read-ahead at a new position */
+	private void seek(long sample) {
+		StreamFeed f = feed;
+		if (f == null) return;
+		f.seek(sample);
+		Prefetcher p = prefetcher;
+		if (p != null)
+			p.wake();
+	}
+
+	/** @return cycles a streamed player found its read-ahead empty, 0 if not prefetching */
+	public long getUnderruns() {
+		StreamFeed f = feed;
+		return f == null ? 0 : f.getUnderruns();
+	}
+
 	@Override public final void setSample(long sample) {
 	    // sample is absolute sample index; convert to frame index safely
-	    if (recording == null || recording.size() == 0) {
+	    if (getLength() == 0) {
 	        tapeCounter.set(0);
+	        offset = 0;
+	        seek(0);
 	        if (played != null) played.setHead(0);
 	        return;
 	    }
 
 	    long frameIdx = sample / N_FRAMES;
-	    int frames = recording.size();
-	    if (frameIdx < 0) frameIdx = 0;
-	    if (frameIdx >= frames) frameIdx = frames - 1;
+	    int off = (int) (sample % N_FRAMES);
+	    int frames = getLength();
+	    if (frameIdx < 0) { frameIdx = 0; off = 0; }
+	    if (frameIdx >= frames) { frameIdx = frames - 1; off = 0; }
 
 	    tapeCounter.set((int) frameIdx);
+	    offset = off;
+	    seek(frameIdx * N_FRAMES + off);
 
 	    // Notify UI/player immediately of the new head (in sample units)
 	    if (played != null) {
-	        long sampleFrame = ((long) tapeCounter.get()) * N_FRAMES;
+	        long sampleFrame = ((long) tapeCounter.get()) * N_FRAMES + off;
 	        played.setHead(sampleFrame);
 	    }
 	}
 
 	public void process(float[] outLeft, float[] outRight) {
+		process(outLeft, outRight, outLeft.length);
+	}
+
+	/** mix the next <code>frames</code> samples into the outputs, which may be larger
+	    (e.g. strip-sized arrays kept at their largest period, see ChannelStrip#prepare) */
+	public void process(float[] outLeft, float[] outRight, int frames) {
 	    if (!playing) return;
 
+	    StreamFeed localFeed = feed;
+	    if (localFeed != null) {
+	    	processFeed(localFeed, outLeft, outRight, frames);
+	    	return;
+	    }
+	    MappedTrack localStream = stream;
+	    if (localStream != null) {
+	    	processStream(localStream, outLeft, outRight, frames);
+	    	return;
+	    }
+
 	    Recording localRec = recording;
 	    if (localRec == null) return;
-	    int frames = localRec.size();
-	    if (frames == 0) return;
+	    int blocks = localRec.size();
+	    if (blocks == 0) return;
+
+	    if (frames != N_FRAMES || outLeft.length != N_FRAMES || offset != 0) {
+	    	processUnaligned(localRec, blocks, outLeft, outRight, frames);
+	    	return;
+	    }
 
 	    int frame = tapeCounter.getAndIncrement();
 
 	    // If we've run past the end, reset and respect ONE_SHOT/LOOP semantics.
-	    if (frame >= frames) {
+	    if (frame >= blocks) {
 	    	rewind();
 	        if (type == Type.ONE_SHOT) {
 	            playing = false;
@@ -118,7 +213,7 @@ public class BasicPlayer implements PlayAudio {
 	    }
 
 	    // After playing the frame, if it was the last frame prepare wrapping/stopping
-	    if (frame + 1 >= frames) {
+	    if (frame + 1 >= blocks) {
 	        tapeCounter.set(0);
 	        if (type == Type.ONE_SHOT) {
 	            playing = false;
@@ -127,10 +222,99 @@ public class BasicPlayer implements PlayAudio {
 	        }
 	    }
 
-	    // Update head display using the current tapeCounter (in samples)
-	    if (played != null)
+	    // Update head display using the current tapeCounter (in samples), not while bouncing
+	    if (played != null && !Freewheel.isOn())
 	        played.setHead(((long) frame) * N_FRAMES);
 
 	}
 
+	/** mix the period from the read-ahead ring, an underrun plays silence */
+	private void processFeed(StreamFeed f, float[] outLeft, float[] outRight, int frames) {
+	    f.mix(outLeft, outRight, 0, frames, amp);
+	    long pos = f.position();
+	    if (f.isEnded()) {
+	        pos = 0;
+	        playing = false;
+	        f.seek(0); // the worker's next poll refills, no unpark from the RT thread
+	        if (played != null)
+	        	played.playState();
+	    }
+	    tapeCounter.set((int) (pos / N_FRAMES));
+	    offset = (int) (pos % N_FRAMES);
+	    if (played != null && !Freewheel.isOn())
+	        played.setHead(pos);
+	}
+
+	/** read the period straight from the mapping, wrapping or stopping at the end */
+	private void processStream(MappedTrack track, float[] outLeft, float[] outRight, int frames) {
+	    long total = track.frames();
+	    if (total == 0) return;
+	    long pos = ((long) tapeCounter.get()) * N_FRAMES + offset;
+	    if (pos >= total)
+	        pos = 0;
+	    int done = 0;
+	    boolean stopped = false;
+	    while (done < frames) {
+	        int n = (int) Math.min(frames - done, total - pos);
+	        track.mix(pos, outLeft, outRight, done, n, amp);
+	        done += n;
+	        pos += n;
+	        if (pos >= total) {
+	            pos = 0;
+	            if (type == Type.ONE_SHOT) {
+	                stopped = true;
+	                break;
+	            }
+	        }
+	    }
+	    tapeCounter.set((int) (pos / N_FRAMES));
+	    offset = (int) (pos % N_FRAMES);
+	    if (stopped) {
+	        playing = false;
+	        if (played != null)
+	        	played.playState();
+	    }
+	    if (played != null && !Freewheel.isOn())
+	        played.setHead(pos);
+	}
+
+	/** JACK period differs from the recording's block size: walk blocks sample by sample */
+	private void processUnaligned(Recording localRec, int blocks, float[] outLeft, float[] outRight, int frames) {
+	    int frame = tapeCounter.get();
+	    int off = offset;
+	    float[][] buf = frame < blocks ? localRec.get(frame) : null;
+	    for (int i = 0; i < frames; i++) {
+	        if (frame >= blocks) {
+	            if (type == Type.ONE_SHOT)
+	                break;
+	            frame = 0;
+	            off = 0;
+	            buf = localRec.get(frame);
+	        }
+	        if (buf != null) {
+	            outLeft[i] += buf[LEFT][off] * amp;
+	            outRight[i] += buf[RIGHT][off] * amp;
+	        }
+	        if (++off == N_FRAMES) {
+	            off = 0;
+	            if (++frame < blocks)
+	                buf = localRec.get(frame);
+	        }
+	    }
+
+	    if (frame >= blocks) {
+	        frame = 0;
+	        off = 0;
+	        if (type == Type.ONE_SHOT) {
+	            playing = false;
+	            if (played != null)
+	            	played.playState();
+	        }
+	    }
+	    tapeCounter.set(frame);
+	    offset = off;
+	    if (played != null && !Freewheel.isOn())
+	        played.setHead(((long) frame) * N_FRAMES + off);
+	}
+
 }
@@ -0,0 +1,145 @@
+package judahzone.jnajack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jaudiolibs.jnajack.Jack;
+import org.jaudiolibs.jnajack.JackClient;
+import org.jaudiolibs.jnajack.JackException;
+import org.jaudiolibs.jnajack.JackPort;
+
+import judahzone.api.AudioEngine.Connect;
+import judahzone.api.AudioEngine.IO;
+import judahzone.api.AudioEngine.Type;
+import judahzone.util.RTLogger;
+
+/** Applies a desired set of {@link Connect}s as one batch: resolves each regEx against the live
+    graph, diffs against the current connections of the local ports involved and only issues the
+    disconnects/connects that actually change something. Control thread only. */
+public class ConnectionPlanner {
+
+	/** a directed JACK connection, source is always an output port */
+	record Edge(String source, String destination) { }
+
+	/** what the last {@link #apply(Collection)} did
+	    @param failed edges JACK refused to connect or disconnect
+	    @param notApplied Connects left un-notified: their regEx matched nothing or one of their edges failed */
+	public record Result(int connected, int disconnected, int unchanged, int failed, List<Connect> notApplied) { }
+
+	private final JackClient jackclient;
+	private final PortIndex index;
+	private final PortPool pool;
+	private final Notifier notifier;
+
+	public ConnectionPlanner(JackClient jackclient, PortIndex index, PortPool pool, Notifier notifier) {
+		this.jackclient = jackclient;
+		this.index = index;
+		this.pool = pool;
+		this.notifier = notifier;
+	}
+
+	/** Make the local ports of <code>desired</code> connected to exactly the ports their regExs resolve to.
+	    A failing edge is logged and skipped, the rest of the plan still runs; only Connects whose
+	    edges all made it are {@link Notifier#connected notified}. */
+	public Result apply(Collection<Connect> desired) throws JackException {
+		Jack jack = Jack.getInstance();
+
+		// desired graph, grouped by local port, and each Connect's share of it
+		Map<String, Set<Edge>> wanted = new LinkedHashMap<>();
+		Map<String, Type> types = new LinkedHashMap<>();
+		List<List<Edge>> resolved = new ArrayList<>(); // parallel to desired
+		for (Connect con : desired) {
+			String local = pool.nameOf((JackPort)con.localPort().port());
+			Set<Edge> edges = wanted.computeIfAbsent(local, k -> new LinkedHashSet<>());
+			types.put(local, con.type());
+			List<Edge> mine = new ArrayList<>();
+			for (String remote : resolve(con))
+				mine.add(edge(con.type(), local, remote));
+			edges.addAll(mine);
+			resolved.add(mine);
+		}
+
+		int unchanged = 0;
+		Set<Edge> failed = new LinkedHashSet<>();
+		List<Edge> remove = new ArrayList<>();
+		List<Edge> add = new ArrayList<>();
+		for (Map.Entry<String, Set<Edge>> entry : wanted.entrySet()) {
+			String local = entry.getKey();
+			Set<Edge> edges = entry.getValue();
+			if (edges.isEmpty())
+				continue; // remote side not (yet) present, leave the port alone
+			Set<Edge> current = new LinkedHashSet<>();
+			try {
+				for (String remote : jack.getAllConnections(jackclient, local))
+					current.add(edge(types.get(local), local, remote));
+			} catch (JackException e) {
+				RTLogger.warn(this, local + ": " + e.getMessage());
+				failed.addAll(edges);
+				continue;
+			}
+			for (Edge e : current)
+				if (edges.contains(e)) unchanged++;
+				else remove.add(e);
+			for (Edge e : edges)
+				if (!current.contains(e)) add.add(e);
+		}
+
+		int disconnected = 0;
+		for (Edge e : remove) {
+			RTLogger.debug(this, "disconnecting " + e.source() + " from " + e.destination());
+			try {
+				jack.disconnect(jackclient, e.source(), e.destination());
+				disconnected++;
+			} catch (JackException ex) {
+				RTLogger.warn(this, "disconnect " + e + ": " + ex.getMessage());
+			}
+		}
+		int connected = 0;
+		for (Edge e : add) {
+			RTLogger.debug(this, "connecting " + e.source() + " to " + e.destination());
+			try {
+				jack.connect(jackclient, e.source(), e.destination());
+				connected++;
+			} catch (JackException ex) {
+				RTLogger.warn(this, "connect " + e + ": " + ex.getMessage());
+				failed.add(e);
+			}
+		}
+
+		List<Connect> notApplied = new ArrayList<>();
+		int i = 0;
+		for (Connect con : desired) {
+			List<Edge> edges = resolved.get(i++);
+			boolean ok = !edges.isEmpty();
+			for (Edge e : edges)
+				ok &= !failed.contains(e);
+			if (ok)
+				notifier.connected(con);
+			else
+				notApplied.add(con);
+		}
+		return new Result(connected, disconnected, unchanged, failed.size() + remove.size() - disconnected, notApplied);
+	}
+
+	/** AUDIO connects remote outputs to local inputs, MIDI connects local outputs to remote inputs */
+	private static Edge edge(Type type, String local, String remote) {
+		return type == Type.MIDI ? new Edge(local, remote) : new Edge(remote, local);
+	}
+
+	/** exact port name wins, otherwise every port of the opposite direction the regEx matches */
+	private List<String> resolve(Connect con) throws JackException {
+		List<String> found = index.fresh().match(con.regEx(), con.type(), con.type() == Type.MIDI ? IO.IN : IO.OUT);
+		for (String name : found)
+			if (name.equals(con.regEx()))
+				return List.of(name);
+		if (found.isEmpty())
+			RTLogger.warn(this, "Nothing: " + con.regEx() + " -- " + con);
+		return found;
+	}
+
+}
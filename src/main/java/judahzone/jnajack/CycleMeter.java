@@ -0,0 +1,137 @@
+package judahzone.jnajack;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jaudiolibs.jnajack.JackClient;
+import org.jaudiolibs.jnajack.JackXrunCallback;
+
+import judahzone.util.Constants;
+
+/** Process-callback timing against the period budget (nframes / sample rate).
+    {@link #record} is allocation-free and lock-free, called once per cycle by the JACK thread
+    (single writer). Any other thread may take a {@link #snapshot()}.
+    <p>With one writer, counters need no CAS: they are updated by a plain read-modify-write
+    published with a release store (<code>lazySet</code>). The meters in this package follow suit. */
+public class CycleMeter implements JackXrunCallback {
+
+	/** 5% of budget per bucket, the last bucket counts overruns */
+	public static final int BUCKETS = 21;
+	private static final int OVER = BUCKETS - 1;
+
+	public record Snapshot(long cycles, long xruns, long overruns, long budgetNanos,
+			long meanNanos, long maxNanos, long lastNanos, long[] histogram) {
+
+		/** @return mean DSP load, 1.0 = whole period */
+		public float load() {
+			return budgetNanos == 0 ? 0 : meanNanos / (float) budgetNanos;
+		}
+
+		/** @return peak DSP load, 1.0 = whole period */
+		public float peak() {
+			return budgetNanos == 0 ? 0 : maxNanos / (float) budgetNanos;
+		}
+
+		/** @return upper bound of the histogram bucket holding the given percentile (0..1), as load */
+		public float percentile(float p) {
+			long target = (long) Math.ceil(p * cycles);
+			long seen = 0;
+			for (int i = 0; i < histogram.length; i++) {
+				seen += histogram[i];
+				if (seen >= target && seen > 0)
+					return (i + 1) / (float) OVER;
+			}
+			return 0;
+		}
+	}
+
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	private final AtomicLong cycles = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	private final AtomicLong last = new AtomicLong();
+	private final AtomicLong overruns = new AtomicLong();
+	private final AtomicLong xruns = new AtomicLong();
+	private volatile int sampleRate = Constants.sampleRate();
+	// RT thread only: period and rate the budget was computed for
+	private int frames;
+	private int budgetRate;
+	private volatile long budget;
+	/** set by {@link #reset()}, applied by the RT thread so counters keep a single writer */
+	private volatile boolean resetPending;
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate; // the RT thread recomputes the budget next cycle
+	}
+
+	/** RT thread: account for one process cycle */
+	public void record(long startNanos, long endNanos, int nframes) {
+		if (resetPending)
+			clear();
+		final int rate = sampleRate;
+		if (nframes != frames || rate != budgetRate) {
+			frames = nframes;
+			budgetRate = rate;
+			budget = nframes * 1_000_000_000L / rate;
+		}
+		long nanos = endNanos - startNanos;
+		int bucket = budget <= 0 ? OVER : (int) Math.min(OVER, nanos * OVER / budget);
+		histogram.lazySet(bucket, histogram.get(bucket) + 1);
+		if (nanos > budget)
+			overruns.lazySet(overruns.get() + 1);
+		if (nanos > max.get())
+			max.lazySet(nanos);
+		last.lazySet(nanos);
+		total.lazySet(total.get() + nanos);
+		cycles.lazySet(cycles.get() + 1);
+	}
+
+	// JACK notification thread
+	@Override public void xrunOccured(JackClient client) {
+		xruns.incrementAndGet();
+	}
+
+	/** @return period length in nanoseconds, from the last cycle's size (start-up size before the first) */
+	public long getBudgetNanos() {
+		long b = budget;
+		return b == 0 ? Constants.bufSize() * 1_000_000_000L / sampleRate : b;
+	}
+
+	public long getXruns() {
+		return xruns.get();
+	}
+
+	/** off the RT thread: consistent-enough copy of the counters */
+	public Snapshot snapshot() {
+		long n = cycles.get();
+		long[] hist = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			hist[i] = histogram.get(i);
+		return new Snapshot(n, xruns.get(), overruns.get(), getBudgetNanos(),
+				n == 0 ? 0 : total.get() / n, max.get(), last.get(), hist);
+	}
+
+	/** restart accounting, e.g. at the top of a set (any thread). Cycle counters are cleared by
+	    the RT thread at its next {@link #record}; xruns, counted on JACK's thread, at once. */
+	public void reset() {
+		xruns.addAndGet(-xruns.get());
+		resetPending = true;
+	}
+
+	/** RT thread: apply a {@link #reset()} */
+	private void clear() {
+		resetPending = false;
+		for (int i = 0; i < BUCKETS; i++)
+			histogram.lazySet(i, 0);
+		cycles.lazySet(0);
+		total.lazySet(0);
+		max.lazySet(0);
+		last.lazySet(0);
+		overruns.lazySet(0);
+	}
+
+}
@@ -0,0 +1,119 @@
+package judahzone.jnajack;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import judahzone.jnajack.fx.ChannelStrip;
+import judahzone.jnajack.fx.JNAEffect;
+import judahzone.jnajack.fx.JackCompressor;
+import judahzone.util.RTLogger;
+
+/** Publishes engine health as platform MXBeans (judahzone.jnajack:type=...,name=...) for
+    JConsole, a JMX exporter or any monitoring agent. Every attribute is read on demand from
+    counters the RT thread already publishes (CycleMeter, request queue, strip state), so
+    sampling never touches the process callback. */
+public class EngineMonitor implements EngineMonitorMXBean {
+
+	public static final String DOMAIN = "judahzone.jnajack";
+
+	private final ZoneJackClient client;
+
+	public EngineMonitor(ZoneJackClient client) {
+		this.client = client;
+	}
+
+	/** register a client's MXBean
+	    @return its name, for {@link #unregister(ObjectName)}, null on failure */
+	public static ObjectName register(ZoneJackClient client) {
+		return register(name("ZoneJackClient", client.getName()), new EngineMonitor(client));
+	}
+
+	/** register a strip's MXBean under the given (channel) name */
+	public static ObjectName register(String name, ChannelStrip strip) {
+		return register(name("ChannelStrip", name), new StripMonitor(strip));
+	}
+
+	public static void unregister(ObjectName name) {
+		try {
+			if (name != null && ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (JMException e) {
+			RTLogger.warn(EngineMonitor.class.getSimpleName(), e);
+		}
+	}
+
+	private static ObjectName register(String name, Object bean) {
+		try {
+			ObjectName result = new ObjectName(name);
+			unregister(result); // replace a previous instance of the same name
+			ManagementFactory.getPlatformMBeanServer().registerMBean(bean, result);
+			return result;
+		} catch (JMException e) {
+			RTLogger.warn(EngineMonitor.class.getSimpleName(), e);
+			return null;
+		}
+	}
+
+	private static String name(String type, String name) {
+		return DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name);
+	}
+
+	@Override public float getDspLoad() {
+		return client.getMeter().snapshot().load();
+	}
+
+	@Override public float getPeakLoad() {
+		return client.getMeter().snapshot().peak();
+	}
+
+	@Override public float getP99Load() {
+		return client.getMeter().snapshot().percentile(0.99f);
+	}
+
+	@Override public long getCycles() {
+		return client.getMeter().snapshot().cycles();
+	}
+
+	@Override public long getOverruns() {
+		return client.getMeter().snapshot().overruns();
+	}
+
+	@Override public long getXruns() {
+		return client.getMeter().getXruns();
+	}
+
+	@Override public int getQueueDepth() {
+		return client.getQueueDepth();
+	}
+
+	@Override public void reset() {
+		client.getMeter().reset();
+	}
+
+	static class StripMonitor implements StripMonitorMXBean {
+		private final ChannelStrip strip;
+
+		StripMonitor(ChannelStrip strip) {
+			this.strip = strip;
+		}
+
+		@Override public int getActiveEffects() {
+			return strip.getActiveCount();
+		}
+
+		@Override public int getLatency() {
+			return strip.getLatency();
+		}
+
+		@Override public float getGainReductionDb() {
+			float result = 0;
+			for (JNAEffect fx : strip.listAll())
+				if (fx instanceof JackCompressor comp)
+					result = Math.max(result, comp.getLastReductionDb());
+			return result;
+		}
+	}
+
+}
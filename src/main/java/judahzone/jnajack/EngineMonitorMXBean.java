@@ -0,0 +1,29 @@
+package judahzone.jnajack;
+
+/** JMX view of one {@link ZoneJackClient}, see {@link EngineMonitor} */
+public interface EngineMonitorMXBean {
+
+	/** @return mean process time / period since the last reset, 1.0 = whole period */
+	float getDspLoad();
+
+	/** @return worst process time / period */
+	float getPeakLoad();
+
+	/** @return 99th percentile process time / period (histogram bucket bound) */
+	float getP99Load();
+
+	long getCycles();
+
+	/** @return cycles that ran longer than the period */
+	long getOverruns();
+
+	/** @return xruns reported by JACK */
+	long getXruns();
+
+	/** @return commands waiting for the control thread */
+	int getQueueDepth();
+
+	/** restart load/xrun accounting (applied by the RT thread at its next cycle) */
+	void reset();
+
+}
@@ -0,0 +1,81 @@
+package judahzone.jnajack;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Freewheel (bounce) accounting for one client: while running, JACK calls process back to back
+    as fast as the CPU allows. Per-cycle UI notifications are suppressed ({@link #isOn()}),
+    metering is decimated to every {@link #DECIMATE}th cycle and the bounce's throughput is
+    reported when it ends. */
+public class Freewheel {
+
+	/** meter one cycle in this many while freewheeling */
+	public static final int DECIMATE = 32;
+
+	/** clients currently freewheeling */
+	private static final AtomicInteger active = new AtomicInteger();
+
+	/** @return true while any client is freewheeling, checked by RT code that would notify the UI */
+	public static boolean isOn() {
+		return active.get() > 0;
+	}
+
+	public record Bounce(long cycles, long frames, long elapsedNanos, int sampleRate) {
+		/** @return audio seconds rendered */
+		public float seconds() {
+			return sampleRate == 0 ? 0 : frames / (float) sampleRate;
+		}
+		/** @return audio seconds rendered per wall-clock second */
+		public float realtimeFactor() {
+			return elapsedNanos == 0 ? 0 : seconds() / (elapsedNanos / 1e9f);
+		}
+	}
+
+	private final AtomicLong cycles = new AtomicLong();
+	private final AtomicLong frames = new AtomicLong();
+	private volatile boolean running;
+	private volatile long startNanos;
+	private volatile int sampleRate;
+	private volatile Bounce last;
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public synchronized void start(int sampleRate) {
+		if (running) return;
+		this.sampleRate = sampleRate;
+		cycles.set(0);
+		frames.set(0);
+		startNanos = System.nanoTime();
+		running = true;
+		active.incrementAndGet();
+	}
+
+	/** @return throughput of the bounce that just ended, or of the previous one if not running */
+	public synchronized Bounce stop() {
+		if (!running) return last;
+		running = false;
+		active.decrementAndGet();
+		last = progress();
+		return last;
+	}
+
+	/** @return throughput so far (or of the last bounce) */
+	public Bounce progress() {
+		if (!running && last != null)
+			return last;
+		return new Bounce(cycles.get(), frames.get(), System.nanoTime() - startNanos, sampleRate);
+	}
+
+	/** RT thread: account one freewheel cycle
+	    @return true if this cycle should be metered */
+	boolean cycle(int nframes) {
+		long n = cycles.get();
+		// RT thread only, see CycleMeter
+		cycles.lazySet(n + 1);
+		frames.lazySet(frames.get() + nframes);
+		return n % DECIMATE == 0;
+	}
+
+}
@@ -1,10 +1,10 @@
 package judahzone.jnajack;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.jaudiolibs.jnajack.Jack;
@@ -22,75 +22,138 @@ import judahzone.api.AudioEngine.Request;
 import judahzone.api.AudioEngine.Type;
 import judahzone.api.AudioEngine.Wrapper;
 import judahzone.util.RTLogger;
-import judahzone.util.Threads;
 
 /** Delegates to audio and MIDI ZoneJackClients; queries both clients
-    asynchronously and aggregates results via Consumer.accept(...). */
-public class JackHelper implements AudioEngine.Provider, AudioEngine.PortData {
+    asynchronously and combines their answers in a CompletableFuture.
+    <p>One client may serve both port types: a single process callback then reads MIDI and
+    renders audio in the same cycle (no extra period of latency, one JNA upcall per cycle). */
+public class JackHelper implements AudioEngine.Provider {
 
     public static final JackPortFlags OUT = JackPortFlags.JackPortIsOutput;
     public static final JackPortFlags IN = JackPortFlags.JackPortIsInput;
 	public static final EnumSet<JackPortFlags> OUTS = EnumSet.of(OUT);
 	public static final EnumSet<JackPortFlags> INS = EnumSet.of(IN);
 
+	/** legacy {@link #query(PortData)} answers with whatever arrived within this window */
+	static final long QUERY_TIMEOUT_MS = 1000;
+
+	/** audio output and MIDI input port names, as answered by each client */
+	public record Ports(List<String> audio, List<String> midi) { }
+
 	private final ZoneJackClient midiClient;
 	private final ZoneJackClient audioClient;
 
-	List<String> audio = Collections.synchronizedList(new ArrayList<>());
-	List<String> midi = Collections.synchronizedList(new ArrayList<>());
-	CountDownLatch latch;
-
 	public JackHelper(ZoneJackClient midiClient, ZoneJackClient audioClient) {
 		this.midiClient = midiClient;
 		this.audioClient = audioClient;
 	}
 
-	/** Query both clients and aggregate audio + MIDI results. */
+	/** single-client mode: audio and MIDI ports live on one client and one process callback */
+	public JackHelper(ZoneJackClient client) {
+		this(client, client);
+	}
+
+	public boolean isSingleClient() {
+		return midiClient == audioClient;
+	}
+
+	/** Query both clients and aggregate audio + MIDI results. A client that has not
+	    answered within {@link #QUERY_TIMEOUT_MS} contributes an empty list. */
 	@Override
 	public void query(PortData consumer) {
-		latch = new CountDownLatch(2);
-		Threads.execute(() -> {
+		CompletableFuture<List<String>> audio = ask(audioClient, Type.AUDIO, IO.OUT)
+				.completeOnTimeout(List.of(), QUERY_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+				.exceptionally(t -> List.of());
+		CompletableFuture<List<String>> midi = ask(midiClient, Type.MIDI, IO.IN)
+				.completeOnTimeout(List.of(), QUERY_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+				.exceptionally(t -> List.of());
+		audio.thenCombine(midi, Ports::new)
+				.thenAccept(ports -> consumer.queried(ports.audio(), ports.midi()));
+	}
 
-			audioClient.getRequests().add(new Query(AudioEngine.Type.AUDIO, AudioEngine.IO.OUT, this));
-			midiClient.getRequests().add(new Query(AudioEngine.Type.MIDI, AudioEngine.IO.IN, this));
+	/** Fan out to the audio and MIDI clients, completing once both have answered.
+	    No thread waits on the result; any number of queries may be in flight. Completes with a
+	    TimeoutException if a client (e.g. one that is closing) hasn't answered in {@link #QUERY_TIMEOUT_MS}. */
+	public CompletableFuture<Ports> queryAsync() {
+		return ask(audioClient, Type.AUDIO, IO.OUT).orTimeout(QUERY_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+				.thenCombine(ask(midiClient, Type.MIDI, IO.IN).orTimeout(QUERY_TIMEOUT_MS, TimeUnit.MILLISECONDS), Ports::new);
+	}
 
-			try {
-				boolean ok = latch.await(1000, TimeUnit.MILLISECONDS);
-				if (!ok)
-					System.err.println("JackHelper: timeout waiting for port queries");
-				consumer.queried(List.copyOf(audio), List.copyOf(midi));
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				consumer.queried(List.copyOf(audio), List.copyOf(midi));
-			}
-		});
+	private static CompletableFuture<List<String>> ask(ZoneJackClient client, Type type, IO dir) {
+		CompletableFuture<List<String>> result = new CompletableFuture<>();
+		Query query = new Query(type, dir, (audio, midi) ->
+				result.complete(List.copyOf(type == Type.AUDIO ? audio : midi)));
+		if (client.whenClosed().isDone())
+			result.completeExceptionally(new IllegalStateException(client.getName() + " closed"));
+		else if (!client.getRequests().add(query))
+			result.completeExceptionally(new IllegalStateException(client.getName() + " request queue full"));
+		return result;
 	}
 
-	/** Route register request to appropriate client. */
+	/** Route register request to appropriate client. A spare port from the client's
+	    {@link PortPool} is claimed at once (no graph lock) and queued for its rename, else the
+	    request is queued; either way the callback comes from the client's {@link Notifier}.
+	    @throws IllegalStateException if the client's request queue is full */
 	@Override
 	public void register(Request req) {
 		ZoneJackClient target =
 			req.type() == AudioEngine.Type.MIDI ? midiClient : audioClient;
-		target.getRequests().add(req);
+		Wrapper pooled = target.getPool().claim(req.type(), req.io(), req.portName());
+		if (pooled == null)
+			queued(target, target.getRequests().add(req), req);
+		else if (!target.getRequests().claimed(req, pooled)) {
+			target.getPool().unclaim((JackPort)pooled.port());
+			queued(target, false, req);
+		}
 	}
 
-	/** Route unregister request to appropriate client. */
+	/** Route unregister request to appropriate client.
+	    @throws IllegalStateException if the client's request queue is full */
 	@Override
 	public void unregister(Request req, Wrapper port) {
 		JackPort p = (JackPort)port.port();
 
-
 		ZoneJackClient target =
 			req.type() == AudioEngine.Type.MIDI ? midiClient : audioClient;
-		target.getRequests().add(p);
+		if (target.getPool().owns(p))
+			queued(target, target.getRequests().release(p), port);
+		else
+			queued(target, target.getRequests().add(p), port);
 	}
 
-	/** Route connect request to appropriate client. */
+	/** Route connect request to appropriate client.
+	    @throws IllegalStateException if the client's request queue is full */
 	@Override
 	public void connect(Connect con) {
 		ZoneJackClient target =
 			con.type() == AudioEngine.Type.MIDI ? midiClient : audioClient;
-		target.getRequests().add(con);
+		queued(target, target.getRequests().add(con), con);
+	}
+
+	/** a full ring drops the command (and its callback would never fire): tell the caller */
+	private static void queued(ZoneJackClient client, boolean accepted, Object request) {
+		if (!accepted)
+			throw new IllegalStateException(client.getName() + " request queue full, rejected " + request);
+	}
+
+	/** Restore many connections at once: each client diffs its share against the live graph
+	    and only connects/disconnects what changed.
+	    @throws IllegalStateException if a client's request queue is full */
+	public void connect(Collection<Connect> session) {
+		List<Connect> audio = new ArrayList<>();
+		List<Connect> midi = new ArrayList<>();
+		for (Connect con : session)
+			(con.type() == AudioEngine.Type.MIDI ? midi : audio).add(con);
+		if (!audio.isEmpty())
+			queued(audioClient, audioClient.getRequests().plan(audio), "session");
+		if (!midi.isEmpty())
+			queued(midiClient, midiClient.getRequests().plan(midi), "session");
+	}
+
+	/** @return cached port names from the owning client's {@link PortIndex}, no server round trip */
+	public List<String> ports(Type type, IO dir) {
+		ZoneJackClient target = type == Type.MIDI ? midiClient : audioClient;
+		return target.getPorts().get().ports(type, dir);
 	}
 
 	/** Convert Ports.Type to JackPortType. */
@@ -103,28 +166,13 @@ public class JackHelper implements AudioEngine.Provider, AudioEngine.PortData {
 		return dir == AudioEngine.IO.IN ? INS : OUTS;
 	}
 
-	@Override
-	public void queried(List<String> audioPorts, List<String> midiPorts) {
-		if (audioPorts != null) {
-			audio.addAll(audioPorts);
-		}
-		if (midiPorts != null) {
-			midi.addAll(midiPorts);
-		}
-		latch.countDown();
-	}
-
-	// untested
+	/** Wait (up to a second per client) for queued requests to be executed by the clients' control threads,
+	    or run them here when called from a control thread or before the clients are active. */
 	public void flush() {
-		JackRequests audio = audioClient.getRequests();
-		for (Object o : audio)
-			audio.process(o);
-		audio.clear();
-
-		JackRequests midi = midiClient.getRequests();
-		for	(Object o : midi)
-			midi.process(o);
-		midi.clear();
+		if (!audioClient.getRequests().awaitDrained(1, TimeUnit.SECONDS))
+			RTLogger.warn(this, "timeout flushing " + audioClient.getName());
+		if (!isSingleClient() && !midiClient.getRequests().awaitDrained(1, TimeUnit.SECONDS))
+			RTLogger.warn(this, "timeout flushing " + midiClient.getName());
 	}
 
 	// SYNC
@@ -147,14 +195,16 @@ public class JackHelper implements AudioEngine.Provider, AudioEngine.PortData {
 	@Override
 	public void connectNow(Object port, Type type, String portName) throws Exception {
 		JackPort jack = (JackPort)port;
-    	JackClient jackclient = type == Type.AUDIO ? audioClient.getJackclient() : midiClient.getJackclient();
+    	ZoneJackClient zone = type == Type.AUDIO ? audioClient : midiClient;
+    	JackClient jackclient = zone.getJackclient();
+    	String name = zone.getPool().nameOf(jack);
     	if (type == Type.MIDI) {
-    			RTLogger.debug(this, "connect midi ... " + jack.getName() + " to " + portName);
-    			Jack.getInstance().connect(jackclient, jack.getName(), portName);
+    			RTLogger.debug(this, "connect midi ... " + name + " to " + portName);
+    			Jack.getInstance().connect(jackclient, name, portName);
     	}
 		else {
-	    	RTLogger.debug(this, "connect audio ... " + portName + " to " + jack.getName());
-			Jack.getInstance().connect(jackclient, portName, jack.getName());
+	    	RTLogger.debug(this, "connect audio ... " + portName + " to " + name);
+			Jack.getInstance().connect(jackclient, portName, name);
 		}
 	}
 
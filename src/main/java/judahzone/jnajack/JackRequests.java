@@ -1,78 +1,292 @@
 package judahzone.jnajack;
 
-import static judahzone.jnajack.JackHelper.portsIOToJack;
-import static judahzone.jnajack.JackHelper.portsTypeToJack;
-
-import java.util.ArrayList;
-import java.util.EnumSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.jaudiolibs.jnajack.Jack;
 import org.jaudiolibs.jnajack.JackClient;
 import org.jaudiolibs.jnajack.JackException;
 import org.jaudiolibs.jnajack.JackPort;
-import org.jaudiolibs.jnajack.JackPortFlags;
-import org.jaudiolibs.jnajack.JackPortType;
 
 import judahzone.api.AudioEngine.Connect;
 import judahzone.api.AudioEngine.Query;
 import judahzone.api.AudioEngine.Request;
 import judahzone.api.AudioEngine.Type;
+import judahzone.api.AudioEngine.Wrapper;
 import judahzone.util.RTLogger;
-import judahzone.util.Threads;
 
-public class JackRequests extends ArrayList<Object> {
+/** Bounded, preallocated multi-producer/single-consumer command ring.
+    Any thread may {@link #add} port commands; only the owning client's control
+    thread drains them, so graph operations never run on the JACK process thread. */
+public class JackRequests {
+
+	public enum Op { REGISTER, UNREGISTER, CONNECT, QUERY, PLAN, RELEASE, CLAIM }
+
+	/** enqueue-to-completion timing of one kind of command */
+	public record Latency(long count, long meanNanos, long maxNanos, long lastNanos) { }
+
+	/** slots in the ring, power of 2 */
+	public static final int CAPACITY = 1024;
+	private static final int MASK = CAPACITY - 1;
+
+	/** Typed command slot, reused for the life of the ring. seq is the publication fence:
+	    seq == pos is free for producer pos, seq == pos + 1 is ready for the consumer. */
+	private static final class Slot {
+		volatile long seq;
+		Op op;
+		long queued;
+		Request request;
+		Wrapper wrapper;
+		Connect connect;
+		Query query;
+		JackPort port;
+		Collection<Connect> plan;
+
+		Slot(long seq) {
+			this.seq = seq;
+		}
+
+		void clear() {
+			op = null;
+			request = null;
+			wrapper = null;
+			connect = null;
+			query = null;
+			port = null;
+			plan = null;
+		}
+	}
 
 	private final ZoneJackClient zone;
 	private final JackClient jackclient;
+	private final ConnectionPlanner planner;
+	private final Slot[] ring = new Slot[CAPACITY];
+	/** next position claimed by a producer */
+	private final AtomicLong tail = new AtomicLong();
+	/** next position read by the consumer, written only by the consumer */
+	private volatile long head;
+	// per-Op timing, written only by the consumer
+	private final long[] opCount = new long[Op.values().length];
+	private final long[] opTotal = new long[Op.values().length];
+	private final long[] opMax = new long[Op.values().length];
+	private final long[] opLast = new long[Op.values().length];
 
 	public JackRequests(ZoneJackClient zone) {
 		this.zone = zone;
 		this.jackclient = zone.getJackclient();
+		this.planner = new ConnectionPlanner(jackclient, zone.getPorts(), zone.getPool(), zone.getNotifier());
+		for (int i = 0; i < CAPACITY; i++)
+			ring[i] = new Slot(i);
 	}
 
-	public void process(Object o) {
-		try {
-    		if (o instanceof Request req) {
-    			zone.registerPort(req);
-    		}
-    		else if (o instanceof Connect con) {
-//    			JackPortType type = portsTypeToJack(con.type());
-//    			EnumSet<JackPortFlags> flags = portsIOToJack(con.io());
-    			connect(((JackPort)con.localPort().port()).getName(), con.regEx(), con);
-//
-//    			String[] regex =  Jack.getInstance().getPorts(jackclient, con.regEx(), type, flags);
-//    			if (regex.length == 0)
-//    				RTLogger.warn(this, "Nothing: " + con.regEx() + " -- " + con);
-//    			else
-//	    			for (String name : regex)
-//	    				connect(con.localPort().name(), name, con);
-    		} else if (o instanceof Query query) {
-    			JackPortType type = portsTypeToJack(query.type());
-    			EnumSet<JackPortFlags> flags = portsIOToJack(query.dir());
-    			List<String> ports = new ArrayList<>();
-
-    			for (String name : Jack.getInstance().getPorts(jackclient, null, type, flags)) {
-    				ports.add(name);
-    			}
-    			Threads.execute(()-> query.callback().queried(
-						query.type() == judahzone.api.AudioEngine.Type.AUDIO ? ports : null,
-						query.type() == judahzone.api.AudioEngine.Type.MIDI ? ports : null));
-
-    		} else if (o instanceof JackPort p) { // unregister
-    			jackclient.unregisterPort(p);
-    		}
-		} catch (JackException e) {
-			RTLogger.warn(o.toString(), e);
+	/** queue a port registration */
+	public boolean add(Request req) {
+		Slot slot = claim(Op.REGISTER);
+		if (slot == null) return false;
+		slot.request = req;
+		publish(slot);
+		return true;
+	}
+
+	/** queue the rename of a port claimed from the {@link PortPool} to the request's name,
+	    then its registered callback */
+	public boolean claimed(Request req, Wrapper port) {
+		Slot slot = claim(Op.CLAIM);
+		if (slot == null) return false;
+		slot.request = req;
+		slot.wrapper = port;
+		publish(slot);
+		return true;
+	}
+
+	/** queue a connection */
+	public boolean add(Connect con) {
+		Slot slot = claim(Op.CONNECT);
+		if (slot == null) return false;
+		slot.connect = con;
+		publish(slot);
+		return true;
+	}
+
+	/** queue a port listing */
+	public boolean add(Query query) {
+		Slot slot = claim(Op.QUERY);
+		if (slot == null) return false;
+		slot.query = query;
+		publish(slot);
+		return true;
+	}
+
+	/** queue a port unregistration */
+	public boolean add(JackPort port) {
+		Slot slot = claim(Op.UNREGISTER);
+		if (slot == null) return false;
+		slot.port = port;
+		publish(slot);
+		return true;
+	}
+
+	/** queue a pooled port's return to its {@link PortPool} (disconnects it first) */
+	public boolean release(JackPort port) {
+		Slot slot = claim(Op.RELEASE);
+		if (slot == null) return false;
+		slot.port = port;
+		publish(slot);
+		return true;
+	}
+
+	/** queue a session's worth of connections, applied as one diff against the live graph
+	    @see ConnectionPlanner */
+	public boolean plan(Collection<Connect> desired) {
+		Slot slot = claim(Op.PLAN);
+		if (slot == null) return false;
+		slot.plan = List.copyOf(desired);
+		publish(slot);
+		return true;
+	}
+
+	/** @return approximate number of queued commands */
+	public int size() {
+		return (int) Math.max(0, tail.get() - head);
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/** @return timing of completed commands of the given kind (approximate, read off the control thread) */
+	public Latency latency(Op op) {
+		int i = op.ordinal();
+		long n = opCount[i];
+		return new Latency(n, n == 0 ? 0 : opTotal[i] / n, opMax[i], opLast[i]);
+	}
+
+	/** Block the caller until everything queued so far has been executed by the control thread.
+	    Called on the control thread itself (initialize(), makeConnections()) or before its loop
+	    runs, the queue is drained inline instead.
+	    @return false on timeout */
+	public boolean awaitDrained(long timeout, TimeUnit unit) {
+		if (Thread.currentThread() == zone || !zone.isControlling()) {
+			drain(CAPACITY);
+			return true;
+		}
+		final long target = tail.get();
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (head < target) {
+			if (System.nanoTime() > deadline)
+				return false;
+			LockSupport.unpark(zone);
+			LockSupport.parkNanos(this, 1_000_000);
+		}
+		return true;
+	}
+
+	/** Consumer only (the control thread, or an inline {@link #awaitDrained flush}):
+	    execute up to max queued commands in FIFO order.
+	    @return number of commands executed */
+	public synchronized int drain(int max) {
+		if (!zone.isOpen())
+			return 0; // the native client is (being) closed, see ZoneJackClient#close()
+		int done = 0;
+		long pos = head;
+		while (done < max) {
+			Slot slot = ring[(int) (pos & MASK)];
+			if (slot.seq != pos + 1)
+				break; // empty (or producer still writing)
+			try {
+				execute(slot);
+			} finally {
+				record(slot.op, System.nanoTime() - slot.queued);
+				slot.clear();
+				slot.seq = pos + CAPACITY; // hand slot back to producers
+				head = ++pos;
+			}
+			done++;
 		}
+		return done;
 	}
 
+	/** Graph operations are not RT-safe and now run on the client's control thread,
+	    this only wakes that thread. Kept for subclasses that still pump from process(). */
+	@Deprecated
 	public void process() {
-		if (isEmpty())
-			return;
-		Object o = getFirst();
-		process(o);
-		removeFirst();
+		LockSupport.unpark(zone);
+	}
+
+	private void record(Op op, long nanos) {
+		int i = op.ordinal();
+		opCount[i]++;
+		opTotal[i] += nanos;
+		opLast[i] = nanos;
+		if (nanos > opMax[i])
+			opMax[i] = nanos;
+	}
+
+	private Slot claim(Op op) {
+		long pos = tail.get();
+		while (true) {
+			Slot slot = ring[(int) (pos & MASK)];
+			long dif = slot.seq - pos;
+			if (dif == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					slot.op = op;
+					slot.queued = System.nanoTime();
+					return slot;
+				}
+				pos = tail.get();
+			} else if (dif < 0) {
+				RTLogger.warn(this, "request queue full, dropped " + op);
+				return null;
+			} else
+				pos = tail.get();
+		}
+	}
+
+	private void publish(Slot slot) {
+		// claimed slot position is seq; consumer waits for seq + 1
+		slot.seq = slot.seq + 1;
+		LockSupport.unpark(zone); // wake the control thread
+	}
+
+	private void execute(Slot slot) {
+		try {
+			switch (slot.op) {
+				case REGISTER -> zone.registerPort(slot.request);
+				case CONNECT -> {
+					Connect con = slot.connect;
+					connect(zone.getPool().nameOf((JackPort)con.localPort().port()), con.regEx(), con);
+				}
+				case QUERY -> query(slot.query);
+				case UNREGISTER -> {
+					zone.declareLatency(slot.port, null);
+					jackclient.unregisterPort(slot.port);
+				}
+				case PLAN -> {
+					ConnectionPlanner.Result result = planner.apply(slot.plan);
+					RTLogger.debug(this, zone.getName() + " " + result);
+				}
+				case RELEASE -> {
+					zone.declareLatency(slot.port, null);
+					zone.getPool().release(jackclient, slot.port);
+					zone.getPorts().invalidate();
+				}
+				case CLAIM -> {
+					zone.getPool().rename(jackclient, (JackPort)slot.wrapper.port(), slot.request.portName());
+					zone.getPorts().invalidate();
+					zone.getNotifier().registered(slot.request, slot.wrapper);
+				}
+			}
+		} catch (JackException | RuntimeException e) { // a bad request must not take down the control loop
+			RTLogger.warn(slot.op.toString(), e);
+		}
+	}
+
+	private void query(Query query) throws JackException {
+		List<String> ports = zone.getPorts().fresh().ports(query.type(), query.dir());
+		zone.getNotifier().queried(query, ports);
 	}
 
 	private void connect(String source, String destination, Connect con)
@@ -83,8 +297,7 @@ public class JackRequests extends ArrayList<Object> {
 			Jack.getInstance().connect(jackclient, source, destination);
 		else
 			Jack.getInstance().connect(jackclient, destination, source);
-		if (con.callback() != null)
-			Threads.execute(() -> con.callback().connected(con));
+		zone.getNotifier().connected(con);
 	}
 
 }
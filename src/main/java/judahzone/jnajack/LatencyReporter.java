@@ -0,0 +1,123 @@
+package judahzone.jnajack;
+
+import java.util.Arrays;
+
+import org.jaudiolibs.jnajack.Jack;
+import org.jaudiolibs.jnajack.JackClient;
+import org.jaudiolibs.jnajack.JackException;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+import judahzone.util.RTLogger;
+
+/** Tells the JACK server about the processing latency declared with
+    {@link ZoneJackClient#declareLatency}. JNAJack doesn't wrap libjack's latency API, so this binds
+    it through JNA: a latency callback (installed before activation) adds the declared frames on
+    top of the latency JACK propagates through the client, and a declaration change asks the
+    server to recompute. Without it JACK assumes the client adds no latency. */
+final class LatencyReporter {
+
+	static final int CAPTURE = 0;  // JackCaptureLatency
+	static final int PLAYBACK = 1; // JackPlaybackLatency
+	static final int IS_INPUT = 0x1;
+	static final int IS_OUTPUT = 0x2;
+
+	interface Lib extends Library {
+		interface LatencyCallback extends Callback {
+			void invoke(int mode, Pointer arg);
+		}
+		int jack_set_latency_callback(Pointer client, LatencyCallback callback, Pointer arg);
+		Pointer jack_port_by_name(Pointer client, String name);
+		int jack_port_flags(Pointer port);
+		void jack_port_get_latency_range(Pointer port, int mode, Range range);
+		void jack_port_set_latency_range(Pointer port, int mode, Range range);
+		int jack_recompute_total_latencies(Pointer client);
+	}
+
+	/** jack_latency_range_t */
+	@Structure.FieldOrder({"min", "max"})
+	public static class Range extends Structure {
+		public int min;
+		public int max;
+	}
+
+	private final ZoneJackClient zone;
+	private final JackClient jackclient;
+	private final Lib lib;
+	private final Pointer client;
+	private final Lib.LatencyCallback callback = this::latency; // strong reference, JACK holds the native stub
+
+	private LatencyReporter(ZoneJackClient zone, JackClient jackclient, Lib lib, Pointer client) {
+		this.zone = zone;
+		this.jackclient = jackclient;
+		this.lib = lib;
+		this.client = client;
+	}
+
+	/** Call before activation.
+	    @return null (logged) if libjack or JNAJack's client handle isn't reachable */
+	static LatencyReporter install(ZoneJackClient zone, JackClient jackclient) {
+		try {
+			Pointer client = LibJack.client(jackclient);
+			Lib lib = Native.load(LibJack.LIBRARY, Lib.class);
+			LatencyReporter result = new LatencyReporter(zone, jackclient, lib, client);
+			if (lib.jack_set_latency_callback(client, result.callback, null) != 0)
+				throw new IllegalStateException("jack_set_latency_callback failed");
+			return result;
+		} catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+			RTLogger.warn(zone.getName(), "port latency not reported to JACK: " + e);
+			return null;
+		}
+	}
+
+	/** a declaration changed: have the server re-run latency callbacks (not from a JACK callback) */
+	void recompute() {
+		lib.jack_recompute_total_latencies(client);
+	}
+
+	/** JACK notification thread. Capture: outputs carry the inputs' latency plus what they declared.
+	    Playback: inputs carry the outputs' latency plus the largest declaration. */
+	private void latency(int mode, Pointer arg) {
+		try {
+			// the server's client name (JACK may have made it unique), matched literally: libjack's
+			// POSIX regex can't take Pattern.quote(), so list every port (empty pattern) and filter here
+			String prefix = jackclient.getName() + ":";
+			String[] all = Jack.getInstance().getPorts(jackclient, "", null, null);
+			if (all == null) return;
+			String[] names = Arrays.stream(all).filter(n -> n.startsWith(prefix)).toArray(String[]::new);
+			Pointer[] ports = new Pointer[names.length];
+			int[] flags = new int[names.length];
+			int from = mode == CAPTURE ? IS_INPUT : IS_OUTPUT;
+			Range range = new Range();
+			long min = Long.MAX_VALUE, max = 0;
+			int declared = 0;
+			for (int i = 0; i < names.length; i++) {
+				ports[i] = lib.jack_port_by_name(client, names[i]);
+				if (ports[i] == null) continue;
+				flags[i] = lib.jack_port_flags(ports[i]);
+				if ((flags[i] & IS_OUTPUT) != 0)
+					declared = Math.max(declared, zone.getPortLatency(names[i]));
+				if ((flags[i] & from) == 0) continue;
+				lib.jack_port_get_latency_range(ports[i], mode, range);
+				min = Math.min(min, range.min);
+				max = Math.max(max, range.max);
+			}
+			if (min == Long.MAX_VALUE)
+				min = 0;
+			for (int i = 0; i < names.length; i++) {
+				if (ports[i] == null || (flags[i] & from) != 0) continue;
+				int extra = mode == CAPTURE ? zone.getPortLatency(names[i]) : declared;
+				range.min = (int) min + extra;
+				range.max = (int) max + extra;
+				lib.jack_port_set_latency_range(ports[i], mode, range);
+			}
+		} catch (JackException | RuntimeException e) {
+			RTLogger.warn(zone.getName(), e);
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package judahzone.jnajack;
+
+import java.lang.reflect.Field;
+
+import org.jaudiolibs.jnajack.JackClient;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.PointerType;
+
+/** Bridge to the parts of libjack JNAJack doesn't wrap ({@link LatencyReporter}, {@link PortPool}
+    renames): callers bind their own JNA interface and pass it the native client from here. */
+final class LibJack {
+
+	static final String LIBRARY = "jack";
+
+	private LibJack() { }
+
+	/** @return the jack_client_t* behind a JNAJack client (a private field, read reflectively) */
+	static Pointer client(JackClient jackclient) throws ReflectiveOperationException {
+		Field handle = JackClient.class.getDeclaredField("clientPtr");
+		handle.setAccessible(true);
+		return ((PointerType) handle.get(jackclient)).getPointer();
+	}
+
+}
@@ -0,0 +1,186 @@
+package judahzone.jnajack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import judahzone.util.Constants;
+import judahzone.util.RTLogger;
+
+/** A WAV (PCM 16/24/32 bit or 32 bit float) or raw float file memory-mapped read-only, so
+    {@link BasicPlayer} can stream it without decoding it onto the heap: opening only parses the
+    header, samples are converted as they are mixed and the OS page cache does the buffering.
+    Mono is played on both sides, channels beyond two are ignored. Files of any length are
+    mapped in segments of up to {@link #SEGMENT_FRAMES}, fewer for wide frames (a mapping is
+    at most 2 GB).
+    <p>A page that isn't resident faults on first touch, on whichever thread reads it. */
+public class MappedTrack {
+
+	static final int SEGMENT_BITS = 24;
+	/** most frames per mapping */
+	public static final int SEGMENT_FRAMES = 1 << SEGMENT_BITS;
+
+	private static final int PCM = 1;
+	private static final int FLOAT = 3;
+	private static final int EXTENSIBLE = 0xFFFE;
+
+	private enum Encoding { PCM16, PCM24, PCM32, FLOAT32 }
+
+	private final File file;
+	private final Encoding encoding;
+	private final int channels;
+	private final int sampleBytes;
+	private final int frameBytes;
+	private final int sampleRate;
+	private final long frames;
+	/** log2 of frames per mapping, so a segment's bytes fit an int */
+	private final int segmentBits;
+	private final MappedByteBuffer[] segments;
+
+	private MappedTrack(File file, FileChannel channel, long dataStart, long dataBytes,
+			Encoding encoding, int channels, int sampleBytes, int sampleRate) throws IOException {
+		this.file = file;
+		this.encoding = encoding;
+		this.channels = channels;
+		this.sampleBytes = sampleBytes;
+		this.frameBytes = channels * sampleBytes;
+		this.sampleRate = sampleRate;
+		frames = Math.min(dataBytes, channel.size() - dataStart) / frameBytes;
+		segmentBits = Math.min(SEGMENT_BITS, 31 - Integer.numberOfLeadingZeros(Integer.MAX_VALUE / frameBytes));
+		long segmentFrames = 1L << segmentBits;
+		segments = new MappedByteBuffer[(int) ((frames + segmentFrames - 1) >>> segmentBits)];
+		for (int i = 0; i < segments.length; i++) {
+			long first = (long) i << segmentBits;
+			long length = Math.min(segmentFrames, frames - first) * frameBytes;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + first * frameBytes, length);
+			segments[i].order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if (sampleRate != Constants.sampleRate())
+			RTLogger.warn(this, file.getName() + " is " + sampleRate + " Hz, playing at " + Constants.sampleRate());
+	}
+
+	/** map a RIFF/WAVE file */
+	public static MappedTrack wav(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			if (!"RIFF".equals(id(header, 0)) || !"WAVE".equals(id(header, 8)))
+				throw new IOException(file.getName() + ": not a WAV file");
+			ByteBuffer chunk = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+			int format = 0, channels = 0, rate = 0, bits = 0;
+			long pos = 12;
+			while (pos + 8 <= channel.size()) {
+				chunk.clear().limit(8);
+				readFully(channel, chunk, pos);
+				String id = id(chunk, 0);
+				long size = chunk.getInt(4) & 0xFFFFFFFFL;
+				if ("fmt ".equals(id)) {
+					if (size < 16)
+						throw new IOException(file.getName() + ": fmt chunk too short (" + size + " bytes)");
+					chunk.clear().limit((int) Math.min(size, chunk.capacity()));
+					readFully(channel, chunk, pos + 8);
+					format = chunk.getShort(0) & 0xFFFF;
+					channels = chunk.getShort(2) & 0xFFFF;
+					rate = chunk.getInt(4);
+					bits = chunk.getShort(14) & 0xFFFF;
+					if (format == EXTENSIBLE && size >= 26)
+						format = chunk.getShort(24) & 0xFFFF; // sub-format GUID starts with the tag
+				} else if ("data".equals(id)) {
+					if (channels == 0)
+						throw new IOException(file.getName() + ": data before fmt");
+					return new MappedTrack(file, channel, pos + 8, size, encoding(file, format, bits),
+							channels, bits / 8, rate);
+				}
+				pos += 8 + size + (size & 1); // chunks are word aligned
+			}
+			throw new IOException(file.getName() + ": no audio data");
+		}
+	}
+
+	/** map headerless little-endian float32 frames (a decoded cache), interleaved if stereo */
+	public static MappedTrack raw(File file, int channels, int sampleRate) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new MappedTrack(file, channel, 0, channel.size(), Encoding.FLOAT32, channels, Float.BYTES, sampleRate);
+		}
+	}
+
+	private static Encoding encoding(File file, int format, int bits) throws IOException {
+		if (format == FLOAT && bits == 32)
+			return Encoding.FLOAT32;
+		if (format == PCM)
+			switch (bits) {
+				case 16: return Encoding.PCM16;
+				case 24: return Encoding.PCM24;
+				case 32: return Encoding.PCM32;
+			}
+		throw new IOException(file.getName() + ": unsupported format " + format + "/" + bits + " bit");
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer dst, long pos) throws IOException {
+		while (dst.hasRemaining())
+			if (channel.read(dst, pos + dst.position()) < 0)
+				throw new IOException("unexpected end of file");
+	}
+
+	private static String id(ByteBuffer buf, int at) {
+		byte[] id = new byte[4];
+		buf.get(at, id);
+		return new String(id, StandardCharsets.US_ASCII);
+	}
+
+	/** Mix <code>len</code> frames starting at <code>frame</code> into out[off..], scaled by gain.
+	    Reads past the end are the caller's concern. */
+	public void mix(long frame, float[] outL, float[] outR, int off, int len, float gain) {
+		int done = 0;
+		while (done < len) {
+			long f = frame + done;
+			ByteBuffer seg = segments[(int) (f >>> segmentBits)];
+			int idx = (int) (f & ((1L << segmentBits) - 1));
+			int n = Math.min(len - done, (1 << segmentBits) - idx);
+			int pos = Math.toIntExact((long) idx * frameBytes); // within the segment, < 2 GB by segmentBits
+			for (int i = off + done, end = i + n; i < end; i++, pos += frameBytes) {
+				float l = sample(seg, pos);
+				outL[i] += l * gain;
+				outR[i] += (channels == 1 ? l : sample(seg, pos + sampleBytes)) * gain;
+			}
+			done += n;
+		}
+	}
+
+	private float sample(ByteBuffer seg, int pos) {
+		return switch (encoding) {
+			case FLOAT32 -> seg.getFloat(pos);
+			case PCM16 -> seg.getShort(pos) * (1f / 32768f);
+			case PCM24 -> ((seg.get(pos) & 0xFF) | (seg.get(pos + 1) & 0xFF) << 8 | seg.get(pos + 2) << 16) * (1f / 8388608f);
+			case PCM32 -> seg.getInt(pos) * (1f / 2147483648f);
+		};
+	}
+
+	/** @return length in sample frames */
+	public long frames() {
+		return frames;
+	}
+
+	/** @return length in blocks of <code>blockSize</code> frames, the last one partial */
+	public int blocks(int blockSize) {
+		return (int) ((frames + blockSize - 1) / blockSize);
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+}
@@ -0,0 +1,197 @@
+package judahzone.jnajack;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jaudiolibs.jnajack.JackException;
+import org.jaudiolibs.jnajack.JackMidi;
+import org.jaudiolibs.jnajack.JackPort;
+
+/** One cycle's worth of JACK MIDI events in preallocated arrays: frame offset, length and bytes
+    per event. {@link #read} fills it from an input port, {@link #add} queues outgoing events (kept
+    in frame order) and {@link #write} flushes them to an output port. Allocation-free after
+    construction; each instance belongs to one RT thread. */
+public class MidiEvents {
+
+	/** receives short (channel) messages, see {@link MidiEvents#forEach} */
+	public interface Handler {
+		void event(int frame, int status, int data1, int data2);
+	}
+
+	public static final int CAPACITY = 1024;
+	/** byte pool per cycle, room for sysex on top of CAPACITY short messages */
+	public static final int POOL = 16 * 1024;
+	/** largest single event accepted */
+	public static final int MAX_EVENT = 1024;
+
+	private final int[] frames;
+	private final int[] offsets;
+	private final int[] lengths;
+	/** event indices in frame order */
+	private final int[] order;
+	private final byte[] pool;
+	private final byte[] scratch = new byte[MAX_EVENT];
+	private final JackMidi.Event event = new JackMidi.Event();
+	private final AtomicLong dropped = new AtomicLong();
+	private int size;
+	private int used;
+
+	public MidiEvents() {
+		this(CAPACITY, POOL);
+	}
+
+	public MidiEvents(int capacity, int poolBytes) {
+		frames = new int[capacity];
+		offsets = new int[capacity];
+		lengths = new int[capacity];
+		order = new int[capacity];
+		pool = new byte[poolBytes];
+	}
+
+	public void clear() {
+		size = 0;
+		used = 0;
+	}
+
+	/** RT thread: replace the contents with this cycle's events on an input port
+	    @return number of events read */
+	public int read(JackPort port) throws JackException {
+		clear();
+		int count = JackMidi.getEventCount(port);
+		for (int i = 0; i < count; i++) {
+			JackMidi.eventGet(event, port, i);
+			int len = event.size();
+			if (len == 0)
+				continue;
+			if (len > MAX_EVENT) {
+				drop();
+				continue;
+			}
+			event.read(scratch);
+			add(event.time(), scratch, 0, len);
+		}
+		return size;
+	}
+
+	/** RT thread: write the queued events to an output port in frame order, then clear
+	    @return number of events written */
+	public int write(JackPort port) throws JackException {
+		JackMidi.clearBuffer(port);
+		int written = size;
+		for (int n = 0; n < size; n++) {
+			int i = order[n];
+			System.arraycopy(pool, offsets[i], scratch, 0, lengths[i]);
+			JackMidi.eventWrite(port, frames[i], scratch, lengths[i]);
+		}
+		clear();
+		return written;
+	}
+
+	/** queue a short message (channel, system common or realtime) */
+	public boolean add(int frame, int status, int data1, int data2) {
+		int len = shortLength(status);
+		if (!reserve(len))
+			return false;
+		pool[used] = (byte) status;
+		if (len > 1)
+			pool[used + 1] = (byte) data1;
+		if (len > 2)
+			pool[used + 2] = (byte) data2;
+		commit(frame, len);
+		return true;
+	}
+
+	/** @return bytes in a short message with this status */
+	static int shortLength(int status) {
+		if (status < 0xF0) // program change, channel pressure: 2 bytes
+			return (status & 0xE0) == 0xC0 ? 2 : 3;
+		return switch (status) {
+			case 0xF1, 0xF3 -> 2;
+			case 0xF2 -> 3;
+			default -> 1;
+		};
+	}
+
+	/** queue any event (copied) */
+	public boolean add(int frame, byte[] src, int off, int len) {
+		if (!reserve(len))
+			return false;
+		System.arraycopy(src, off, pool, used, len);
+		commit(frame, len);
+		return true;
+	}
+
+	private boolean reserve(int len) {
+		if (size == frames.length || used + len > pool.length) {
+			drop();
+			return false;
+		}
+		return true;
+	}
+
+	/** record the event at pool[used] and insert it in frame order (usually appends) */
+	private void commit(int frame, int len) {
+		int idx = size++;
+		frames[idx] = frame;
+		offsets[idx] = used;
+		lengths[idx] = len;
+		used += len;
+		int n = idx;
+		while (n > 0 && frames[order[n - 1]] > frame) {
+			order[n] = order[n - 1];
+			n--;
+		}
+		order[n] = idx;
+	}
+
+	private void drop() {
+		dropped.lazySet(dropped.get() + 1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** @return frame offset of the n-th event in frame order */
+	public int frame(int n) {
+		return frames[order[n]];
+	}
+
+	public int length(int n) {
+		return lengths[order[n]];
+	}
+
+	public int status(int n) {
+		return pool[offsets[order[n]]] & 0xFF;
+	}
+
+	public int data1(int n) {
+		int i = order[n];
+		return lengths[i] > 1 ? pool[offsets[i] + 1] & 0xFF : 0;
+	}
+
+	public int data2(int n) {
+		int i = order[n];
+		return lengths[i] > 2 ? pool[offsets[i] + 2] & 0xFF : 0;
+	}
+
+	/** copy the n-th event's bytes into dst */
+	public void copy(int n, byte[] dst, int off) {
+		int i = order[n];
+		System.arraycopy(pool, offsets[i], dst, off, lengths[i]);
+	}
+
+	/** dispatch short messages in frame order (system exclusive is skipped) */
+	public void forEach(Handler handler) {
+		for (int n = 0; n < size; n++) {
+			int status = status(n);
+			if (status == 0xF0) continue;
+			handler.event(frame(n), status, data1(n), data2(n));
+		}
+	}
+
+	/** @return events dropped for lack of room since construction (any thread) */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+}
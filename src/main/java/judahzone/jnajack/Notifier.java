@@ -0,0 +1,154 @@
+package judahzone.jnajack;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import judahzone.api.AudioEngine.Connect;
+import judahzone.api.AudioEngine.Query;
+import judahzone.api.AudioEngine.Request;
+import judahzone.api.AudioEngine.Type;
+import judahzone.api.AudioEngine.Wrapper;
+import judahzone.util.RTLogger;
+import judahzone.util.Threads;
+
+/** Delivers request callbacks (registered, connected, queried) in order on one thread.
+    The control thread stages notes into a reused ring during a drain pass and {@link #flush()}es
+    them as one batch with a single wakeup, instead of a lambda and a pool thread per event.
+    Notes raised off the control thread fall back to {@link Threads#execute}. */
+public class Notifier extends Thread {
+
+	public static final int CAPACITY = 1024;
+	private static final int MASK = CAPACITY - 1;
+	static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(251);
+
+	enum Kind { REGISTERED, CONNECTED, QUERIED }
+
+	private static final class Note {
+		Kind kind;
+		Request request;
+		Wrapper wrapper;
+		Connect connect;
+		Query query;
+		List<String> ports;
+		void clear() {
+			request = null; wrapper = null; connect = null; query = null; ports = null;
+		}
+	}
+
+	private final Thread producer;
+	private final Note[] ring = new Note[CAPACITY];
+	/** producer cursor, staged but maybe not yet published */
+	private long tail;
+	/** notes visible to the consumer */
+	private volatile long published;
+	/** notes delivered */
+	private volatile long head;
+	private volatile boolean running = true;
+	private volatile boolean parked;
+
+	/** @param producer the only thread that stages notes (a client's control thread) */
+	public Notifier(Thread producer) {
+		super(producer.getName() + "-notify");
+		this.producer = producer;
+		for (int i = 0; i < CAPACITY; i++)
+			ring[i] = new Note();
+		setDaemon(true);
+	}
+
+	void registered(Request req, Wrapper port) {
+		if (req.callback() == null) return;
+		Note note = stage();
+		if (note == null) {
+			Threads.execute(() -> req.callback().registered(req, port));
+			return;
+		}
+		note.kind = Kind.REGISTERED;
+		note.request = req;
+		note.wrapper = port;
+	}
+
+	void connected(Connect con) {
+		if (con.callback() == null) return;
+		Note note = stage();
+		if (note == null) {
+			Threads.execute(() -> con.callback().connected(con));
+			return;
+		}
+		note.kind = Kind.CONNECTED;
+		note.connect = con;
+	}
+
+	void queried(Query query, List<String> ports) {
+		Note note = stage();
+		if (note == null) {
+			Threads.execute(() -> deliver(query, ports));
+			return;
+		}
+		note.kind = Kind.QUERIED;
+		note.query = query;
+		note.ports = ports;
+	}
+
+	/** control thread: publish everything staged since the last flush, one wakeup */
+	void flush() {
+		if (tail == published) return;
+		published = tail;
+		if (parked)
+			LockSupport.unpark(this);
+	}
+
+	/** @return a free note on the producer thread (waits for the consumer if the ring is full), else null */
+	private Note stage() {
+		if (Thread.currentThread() != producer || !running)
+			return null;
+		while (tail - head == CAPACITY) {
+			if (!running)
+				return null;
+			flush();
+			LockSupport.parkNanos(this, 50_000);
+		}
+		return ring[(int) (tail++ & MASK)];
+	}
+
+	@Override public void run() {
+		while (running) {
+			long end = published;
+			if (head == end) {
+				parked = true;
+				if (published == end && running) // re-check after announcing, producer unparks
+					LockSupport.parkNanos(this, IDLE_NANOS);
+				parked = false;
+				continue;
+			}
+			for (long pos = head; pos < end; pos++) {
+				Note note = ring[(int) (pos & MASK)];
+				try {
+					switch (note.kind) {
+						case REGISTERED -> note.request.callback().registered(note.request, note.wrapper);
+						case CONNECTED -> note.connect.callback().connected(note.connect);
+						case QUERIED -> deliver(note.query, note.ports);
+					}
+				} catch (Throwable t) {
+					RTLogger.warn(this, t);
+				} finally {
+					note.clear();
+					head = pos + 1;
+				}
+			}
+		}
+	}
+
+	private static void deliver(Query query, List<String> ports) {
+		query.callback().queried(
+				query.type() == Type.AUDIO ? ports : null,
+				query.type() == Type.MIDI ? ports : null);
+	}
+
+	/** stop after the batch in progress */
+	public void close() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+}
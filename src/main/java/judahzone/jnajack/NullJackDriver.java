@@ -0,0 +1,105 @@
+package judahzone.jnajack;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jaudiolibs.jnajack.JackProcessCallback;
+
+/** In-process stand-in for a JACK server: drives a process callback with synthetic ports at a
+    chosen buffer size and sample rate, either paced like a real period or as fast as possible.
+    For offline rendering, load tests and CI on machines without jackd.
+    <p>The callback receives a <code>null</code> JackClient; processing code under test looks up
+    its synthetic port buffers by name with {@link #port(String)}. */
+public class NullJackDriver {
+
+	public enum Pace {
+		/** one cycle per period, like a JACK server */
+		REALTIME,
+		/** back to back, as fast as the CPU allows */
+		FREEWHEEL }
+
+	/** Called before every cycle to fill inputs (and after the previous one, to collect outputs). */
+	public interface Feeder {
+		void cycle(NullJackDriver driver, long frame);
+	}
+
+	private final int bufSize;
+	private final int sampleRate;
+	private final Pace pace;
+	private final Map<String, FloatBuffer> ports = new LinkedHashMap<>();
+	private volatile boolean running;
+
+	public NullJackDriver(int bufSize, int sampleRate, Pace pace) {
+		this.bufSize = bufSize;
+		this.sampleRate = sampleRate;
+		this.pace = pace;
+	}
+
+	public int getBufSize() { return bufSize; }
+	public int getSampleRate() { return sampleRate; }
+
+	/** @return the synthetic port's buffer (direct, native order, like JACK port memory), created on first use */
+	public synchronized FloatBuffer port(String name) {
+		return ports.computeIfAbsent(name, k ->
+			ByteBuffer.allocateDirect(bufSize * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer());
+	}
+
+	public synchronized Map<String, FloatBuffer> getPorts() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(ports));
+	}
+
+	/** Drive a ZoneJackClient through its instrumented cycle so {@link CycleMeter} sees offline load too.
+	    The client's sample-rate and buffer-size hooks run first, so its strips and effects are
+	    prepared for this driver's rate and period, as JACK would before the first cycle. */
+	public Freewheel.Bounce run(ZoneJackClient client, long cycles, Feeder feed) {
+		client.getMeter().setSampleRate(sampleRate);
+		client.sampleRateChanged(sampleRate);
+		client.buffersizeChanged(bufSize);
+		if (pace == Pace.FREEWHEEL)
+			client.setFreewheel(true);
+		try {
+			return run((JackProcessCallback) client::cycle, cycles, feed);
+		} finally {
+			client.setFreewheel(false);
+		}
+	}
+
+	/** Run <code>cycles</code> periods (Long.MAX_VALUE until {@link #stop()}) on the calling thread.
+	    Stops early if the callback returns false.
+	    @return cycles and frames rendered in how long, as for a {@link Freewheel} bounce */
+	public Freewheel.Bounce run(JackProcessCallback callback, long cycles, Feeder feed) {
+		final long period = bufSize * 1_000_000_000L / sampleRate;
+		final long start = System.nanoTime();
+		long deadline = start;
+		long frame = 0;
+		long done = 0;
+		running = true;
+		while (running && done < cycles) {
+			if (feed != null)
+				feed.cycle(this, frame);
+			if (!callback.process(null, bufSize))
+				break;
+			frame += bufSize;
+			done++;
+			if (pace == Pace.REALTIME) {
+				deadline += period;
+				long wait = deadline - System.nanoTime();
+				if (wait > 0)
+					LockSupport.parkNanos(this, wait);
+			}
+		}
+		running = false;
+		return new Freewheel.Bounce(done, frame, System.nanoTime() - start, sampleRate);
+	}
+
+	/** end a {@link #run} from another thread after the current cycle */
+	public void stop() {
+		running = false;
+	}
+
+}
@@ -0,0 +1,134 @@
+package judahzone.jnajack;
+
+import static judahzone.jnajack.JackHelper.portsIOToJack;
+import static judahzone.jnajack.JackHelper.portsTypeToJack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import org.jaudiolibs.jnajack.Jack;
+import org.jaudiolibs.jnajack.JackClient;
+import org.jaudiolibs.jnajack.JackException;
+import org.jaudiolibs.jnajack.JackPortRegistrationCallback;
+
+import judahzone.api.AudioEngine.IO;
+import judahzone.api.AudioEngine.Type;
+
+/** Cached directory of the server's ports, indexed by type, direction and client prefix.
+    JACK port registration callbacks only mark the index dirty and wake the control thread,
+    which rescans once per pass. Readers get an immutable {@link Snapshot} in O(1). */
+public class PortIndex implements JackPortRegistrationCallback {
+
+	/** immutable view of the graph's ports */
+	public record Snapshot(long version, List<String> audioIn, List<String> audioOut,
+			List<String> midiIn, List<String> midiOut, Map<String, List<String>> byClient) {
+
+		static final Snapshot EMPTY = new Snapshot(0, List.of(), List.of(), List.of(), List.of(), Map.of());
+
+		public List<String> ports(Type type, IO dir) {
+			if (type == Type.AUDIO)
+				return dir == IO.IN ? audioIn : audioOut;
+			return dir == IO.IN ? midiIn : midiOut;
+		}
+
+		/** @return every port of the JACK client named <code>client</code> */
+		public List<String> client(String client) {
+			return byClient.getOrDefault(client, List.of());
+		}
+
+		/** JACK semantics: unanchored regex search over full port names */
+		public List<String> match(String regex, Type type, IO dir) {
+			Pattern pattern = pattern(regex);
+			List<String> result = new ArrayList<>();
+			for (String name : ports(type, dir))
+				if (pattern.matcher(name).find())
+					result.add(name);
+			return result;
+		}
+	}
+
+	private static final int PATTERN_CACHE = 256;
+	private static final ConcurrentHashMap<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+	static Pattern pattern(String regex) {
+		Pattern result = patterns.get(regex);
+		if (result == null) {
+			if (patterns.size() > PATTERN_CACHE)
+				patterns.clear();
+			result = patterns.computeIfAbsent(regex, Pattern::compile);
+		}
+		return result;
+	}
+
+	private final ZoneJackClient zone;
+	private final JackClient jackclient;
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+	private volatile boolean dirty = true;
+
+	public PortIndex(ZoneJackClient zone, JackClient jackclient) {
+		this.zone = zone;
+		this.jackclient = jackclient;
+	}
+
+	/** @return last published snapshot, any thread, may trail the server by one control-plane pass */
+	public Snapshot get() {
+		return snapshot;
+	}
+
+	/** Control thread: rescan if invalidated, then return the current snapshot. */
+	public Snapshot fresh() throws JackException {
+		if (dirty)
+			refresh();
+		return snapshot;
+	}
+
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/** Force a rescan on the next control-plane pass (e.g. after renaming a port). */
+	public void invalidate() {
+		dirty = true;
+		LockSupport.unpark(zone);
+	}
+
+	private void refresh() throws JackException {
+		dirty = false; // callbacks arriving during the scan will re-flag
+		List<String> audioIn = scan(Type.AUDIO, IO.IN);
+		List<String> audioOut = scan(Type.AUDIO, IO.OUT);
+		List<String> midiIn = scan(Type.MIDI, IO.IN);
+		List<String> midiOut = scan(Type.MIDI, IO.OUT);
+
+		Map<String, List<String>> clients = new HashMap<>();
+		for (List<String> list : List.of(audioIn, audioOut, midiIn, midiOut))
+			for (String name : list) {
+				int colon = name.indexOf(':');
+				String client = colon < 0 ? name : name.substring(0, colon);
+				clients.computeIfAbsent(client, k -> new ArrayList<>()).add(name);
+			}
+		Map<String, List<String>> byClient = new HashMap<>();
+		clients.forEach((k, v) -> byClient.put(k, List.copyOf(v)));
+
+		snapshot = new Snapshot(snapshot.version() + 1, audioIn, audioOut, midiIn, midiOut, Map.copyOf(byClient));
+	}
+
+	private List<String> scan(Type type, IO dir) throws JackException {
+		String[] names = Jack.getInstance().getPorts(jackclient, null, portsTypeToJack(type), portsIOToJack(dir));
+		return names == null ? List.of() : List.of(names);
+	}
+
+	// JACK notification thread
+	@Override public void portRegistered(JackClient client, String portFullName) {
+		invalidate();
+	}
+
+	@Override public void portUnregistered(JackClient client, String portFullName) {
+		invalidate();
+	}
+
+}
@@ -0,0 +1,182 @@
+package judahzone.jnajack;
+
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jaudiolibs.jnajack.Jack;
+import org.jaudiolibs.jnajack.JackClient;
+import org.jaudiolibs.jnajack.JackException;
+import org.jaudiolibs.jnajack.JackPort;
+import org.jaudiolibs.jnajack.JackPortFlags;
+import org.jaudiolibs.jnajack.JackPortType;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+import judahzone.api.AudioEngine.IO;
+import judahzone.api.AudioEngine.Type;
+import judahzone.api.AudioEngine.Wrapper;
+import judahzone.util.RTLogger;
+
+/** Ports registered up front (in {@link ZoneJackClient#initialize()}) and handed out on demand,
+    so adding a channel mid-performance is a lock-free claim instead of a trip through the
+    server's graph lock. The control thread then {@link #rename}s a claimed port to its channel's
+    name; released ports are disconnected, renamed back and reused.
+    <p>{@link JackPort#getName()} keeps the spare name, use {@link #nameOf} for the server's. */
+public class PortPool {
+
+	private record Key(Type type, IO io) { }
+
+	/** one type/direction's ports, claimed by CAS on the owner slot */
+	private static final class Shelf {
+		final JackPort[] ports;
+		final AtomicReferenceArray<String> owners;
+		Shelf(JackPort[] ports) {
+			this.ports = ports;
+			owners = new AtomicReferenceArray<>(ports.length);
+		}
+		int indexOf(JackPort port) {
+			for (int i = 0; i < ports.length; i++)
+				if (ports[i] == port)
+					return i;
+			return -1;
+		}
+	}
+
+	/** libjack's port rename, JNAJack doesn't wrap it */
+	interface Lib extends Library {
+		Pointer jack_port_by_name(Pointer client, String name);
+		int jack_port_rename(Pointer client, Pointer port, String name);
+	}
+
+	private final ConcurrentHashMap<Key, Shelf> shelves = new ConcurrentHashMap<>();
+	/** full server names of claimed ports that were renamed */
+	private final ConcurrentHashMap<JackPort, String> renamed = new ConcurrentHashMap<>();
+	// control thread
+	private Lib lib;
+	private Pointer handle;
+	private boolean unbound;
+
+	/** Register <code>count</code> spare ports named prefix1..prefixN (JACK graph lock, call from initialize()). */
+	public void fill(JackClient client, Type type, IO io, String prefix, int count) throws JackException {
+		JackPortType t = JackHelper.portsTypeToJack(type);
+		EnumSet<JackPortFlags> flags = JackHelper.portsIOToJack(io);
+		JackPort[] ports = new JackPort[count];
+		for (int i = 0; i < count; i++)
+			ports[i] = client.registerPort(prefix + (i + 1), t, flags);
+		if (shelves.putIfAbsent(new Key(type, io), new Shelf(ports)) != null)
+			throw new IllegalStateException("pool already filled: " + type + " " + io);
+	}
+
+	/** Any thread, lock-free.
+	    @return a spare port wrapped under <code>name</code>, or null if none is left */
+	public Wrapper claim(Type type, IO io, String name) {
+		Shelf shelf = shelves.get(new Key(type, io));
+		if (shelf == null) return null;
+		for (int i = 0; i < shelf.ports.length; i++)
+			if (shelf.owners.get(i) == null && shelf.owners.compareAndSet(i, null, name))
+				return new Wrapper(name, shelf.ports[i]);
+		return null;
+	}
+
+	/** Hand back a port from {@link #claim} that was never used (its rename couldn't be queued). */
+	void unclaim(JackPort port) {
+		for (Shelf shelf : shelves.values()) {
+			int idx = shelf.indexOf(port);
+			if (idx >= 0)
+				shelf.owners.set(idx, null);
+		}
+	}
+
+	/** @return the port's full name on the server, a claimed port's channel name once renamed */
+	public String nameOf(JackPort port) {
+		String result = renamed.get(port);
+		return result == null ? port.getName() : result;
+	}
+
+	/** Control thread: give a pool port a new short name on the server (connections are kept).
+	    @return false (logged) if the server refused or libjack's rename isn't reachable */
+	boolean rename(JackClient client, JackPort port, String shortName) {
+		if (!bind(client))
+			return false;
+		String current = nameOf(port);
+		try {
+			Pointer target = lib.jack_port_by_name(handle, current);
+			if (target == null || lib.jack_port_rename(handle, target, shortName) != 0) {
+				RTLogger.warn(this, "could not rename " + current + " to " + shortName);
+				return false;
+			}
+		} catch (LinkageError e) { // libjack older than jack_port_rename
+			unbound = true;
+			RTLogger.warn(this, "pooled ports keep their spare names: " + e);
+			return false;
+		}
+		if (shortName.equals(port.getShortName()))
+			renamed.remove(port);
+		else
+			renamed.put(port, client.getName() + ":" + shortName);
+		return true;
+	}
+
+	private boolean bind(JackClient client) {
+		if (lib != null)
+			return true;
+		if (unbound)
+			return false;
+		try {
+			handle = LibJack.client(client);
+			lib = Native.load(LibJack.LIBRARY, Lib.class);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+			unbound = true;
+			RTLogger.warn(this, "pooled ports keep their spare names: " + e);
+			return false;
+		}
+	}
+
+	/** @return true if the port belongs to this pool (claimed or not) */
+	public boolean owns(JackPort port) {
+		for (Shelf shelf : shelves.values())
+			if (shelf.indexOf(port) >= 0)
+				return true;
+		return false;
+	}
+
+	/** @return spare ports left of the given kind */
+	public int available(Type type, IO io) {
+		Shelf shelf = shelves.get(new Key(type, io));
+		if (shelf == null) return 0;
+		int result = 0;
+		for (int i = 0; i < shelf.ports.length; i++)
+			if (shelf.owners.get(i) == null)
+				result++;
+		return result;
+	}
+
+	/** Control thread: drop every connection of a claimed port, restore its spare name, then make
+	    it available again. */
+	void release(JackClient client, JackPort port) throws JackException {
+		for (var entry : shelves.entrySet()) {
+			Shelf shelf = entry.getValue();
+			int idx = shelf.indexOf(port);
+			if (idx < 0) continue;
+			String name = nameOf(port);
+			String[] remotes = Jack.getInstance().getAllConnections(client, name);
+			if (remotes != null)
+				for (String remote : remotes) {
+					if (entry.getKey().io() == IO.OUT)
+						Jack.getInstance().disconnect(client, name, remote);
+					else
+						Jack.getInstance().disconnect(client, remote, name);
+				}
+			if (renamed.containsKey(port))
+				rename(client, port, port.getShortName());
+			String owner = shelf.owners.getAndSet(idx, null);
+			RTLogger.debug(this, "released " + name + " from " + owner);
+			return;
+		}
+	}
+
+}
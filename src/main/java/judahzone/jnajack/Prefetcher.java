@@ -0,0 +1,82 @@
+package judahzone.jnajack;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import judahzone.util.RTLogger;
+
+/** Keeps the {@link StreamFeed}s of streamed players topped up from one background thread,
+    so reads from memory-mapped tracks (and their page faults) happen off the JACK callback.
+    Polls every {@link #POLL_NANOS}; {@link #wake()} after a seek to refill at once. */
+public class Prefetcher extends Thread {
+
+	static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private volatile StreamFeed[] feeds = new StreamFeed[0];
+	private volatile boolean running = true;
+
+	public Prefetcher() {
+		super("prefetch");
+		setDaemon(true);
+	}
+
+	/** @return a new feed for the track, served by this thread */
+	public StreamFeed feed(MappedTrack track, boolean loop) {
+		StreamFeed result = new StreamFeed(track, loop);
+		add(result);
+		return result;
+	}
+
+	public synchronized void add(StreamFeed feed) {
+		StreamFeed[] next = Arrays.copyOf(feeds, feeds.length + 1);
+		next[feeds.length] = feed;
+		feeds = next;
+		wake();
+	}
+
+	private synchronized void prune() {
+		feeds = Arrays.stream(feeds).filter(f -> !f.isClosed()).toArray(StreamFeed[]::new);
+	}
+
+	public void wake() {
+		LockSupport.unpark(this);
+	}
+
+	@Override public void run() {
+		while (running) {
+			boolean work = false;
+			boolean stale = false;
+			for (StreamFeed feed : feeds) {
+				if (feed.isClosed()) {
+					stale = true;
+					continue;
+				}
+				try {
+					work |= feed.fill();
+				} catch (Throwable t) { // e.g. the file shrank under the mapping
+					RTLogger.warn(this, feed.getTrack().getFile().getName() + ": " + t);
+					feed.close();
+				}
+			}
+			if (stale)
+				prune();
+			if (!work)
+				LockSupport.parkNanos(this, POLL_NANOS);
+		}
+	}
+
+	/** @return underruns summed over the live feeds */
+	public long getUnderruns() {
+		long result = 0;
+		for (StreamFeed feed : feeds)
+			result += feed.getUnderruns();
+		return result;
+	}
+
+	public void close() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+}
@@ -0,0 +1,116 @@
+package judahzone.jnajack;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import judahzone.jnajack.fx.ChannelStrip;
+import judahzone.jnajack.fx.JNAEffect.RTEffect;
+import judahzone.util.RTLogger;
+
+/** Watches a client's process cycles from a low-priority daemon thread. When a cycle is still
+    running past <code>fraction</code> of the period, it captures the RT thread's stack and the
+    effect in progress on that thread ({@link ChannelStrip#running(Thread)}), waits (at most
+    {@link #WAIT_PERIODS} periods, or until the client closes) for the cycle to finish and logs
+    the stall, so a callback that never returns is still reported. The RT thread only pays for two volatile stores per cycle plus the strip breadcrumbs.
+    <p>Capturing a stack brings the RT thread to a safepoint, which only happens once a cycle
+    has already overrun its threshold. */
+public class StallWatchdog extends Thread {
+
+	public static final float DEFAULT_FRACTION = 0.9f;
+	/** stalls kept for {@link #getStalls()} */
+	public static final int KEEP = 16;
+	static final long MIN_POLL = TimeUnit.MICROSECONDS.toNanos(100);
+	/** periods to wait for a stalled cycle to return before logging it as stuck */
+	public static final int WAIT_PERIODS = 32;
+
+	/** @param returned false if the cycle was still running when logged */
+	public record Stall(long startNanos, long elapsedNanos, long budgetNanos, String effect, boolean returned,
+			StackTraceElement[] stack) {
+		@Override public String toString() {
+			StringBuilder sb = new StringBuilder(String.format("cycle %s %.2f ms (period %.2f ms) in %s",
+					returned ? "stalled" : "stuck, still running after", elapsedNanos / 1e6f, budgetNanos / 1e6f,
+					effect == null ? "?" : effect));
+			for (StackTraceElement frame : stack)
+				sb.append(System.lineSeparator()).append("\tat ").append(frame);
+			return sb.toString();
+		}
+	}
+
+	private final ZoneJackClient client;
+	private final float fraction;
+	private final ArrayDeque<Stall> stalls = new ArrayDeque<>();
+	private volatile boolean running = true;
+	private volatile long count;
+
+	public StallWatchdog(ZoneJackClient client) {
+		this(client, DEFAULT_FRACTION);
+	}
+
+	/** @param fraction of the period a cycle may run before it counts as a stall */
+	public StallWatchdog(ZoneJackClient client, float fraction) {
+		super(client.getName() + "-watchdog");
+		this.client = client;
+		this.fraction = fraction;
+		setDaemon(true);
+		setPriority(Thread.MIN_PRIORITY);
+	}
+
+	@Override public void run() {
+		ChannelStrip.setTracing(true);
+		try {
+			watch();
+		} finally {
+			ChannelStrip.setTracing(false);
+		}
+	}
+
+	private void watch() {
+		long reported = 0;
+		while (running) {
+			long threshold = (long) (client.getMeter().getBudgetNanos() * fraction);
+			LockSupport.parkNanos(this, Math.max(MIN_POLL, threshold / 4));
+			long start = client.getCycleStart();
+			if (start == 0 || start == reported || System.nanoTime() - start < threshold)
+				continue;
+			reported = start;
+			Thread rt = client.getRtThread();
+			RTEffect fx = rt == null ? null : ChannelStrip.running(rt);
+			StackTraceElement[] stack = rt == null ? new StackTraceElement[0] : rt.getStackTrace();
+			long giveUp = System.nanoTime() + WAIT_PERIODS * client.getMeter().getBudgetNanos();
+			boolean returned;
+			while (!(returned = client.getCycleStart() != start) && running  // log after the fact,
+					&& !client.whenClosed().isDone() && System.nanoTime() < giveUp) // unless it never returns
+				LockSupport.parkNanos(this, MIN_POLL);
+			Stall stall = new Stall(start, System.nanoTime() - start, client.getMeter().getBudgetNanos(),
+					fx == null ? null : fx.getName(), returned, stack);
+			record(stall);
+			RTLogger.warn(client.getName(), stall.toString());
+		}
+	}
+
+	private synchronized void record(Stall stall) {
+		if (stalls.size() == KEEP)
+			stalls.removeFirst();
+		stalls.addLast(stall);
+		count++;
+	}
+
+	/** @return most recent stalls, oldest first */
+	public synchronized List<Stall> getStalls() {
+		return new ArrayList<>(stalls);
+	}
+
+	/** @return stalls seen since start */
+	public long getCount() {
+		return count;
+	}
+
+	public void close() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+}
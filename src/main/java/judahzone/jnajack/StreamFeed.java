@@ -0,0 +1,222 @@
+package judahzone.jnajack;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import judahzone.util.Constants;
+
+/** Read-ahead for one streamed {@link MappedTrack}: a {@link Prefetcher} thread copies upcoming
+    blocks out of the mapping into a single-producer/single-consumer ring, and the RT thread
+    {@link #mix}es from the ring, so a page fault stalls the worker instead of the JACK callback.
+    The worker follows the play order itself (wrapping when looping, stopping at the end of a
+    one-shot); {@link #seek} restarts it elsewhere and the RT side drops the stale blocks.
+    An empty ring plays silence and counts an {@link #getUnderruns() underrun}, except while
+    waiting for the first blocks after a seek. */
+public class StreamFeed {
+
+	public static final int DEFAULT_BLOCKS = 32;
+	/** frames per ring block */
+	public static final int BLOCK = Constants.bufSize();
+
+	private final MappedTrack track;
+	private final int slots;
+	private final float[][] left;
+	private final float[][] right;
+	private final long[] starts;
+	private final int[] lengths;
+	private final int[] epochs;
+	private final boolean[] lasts;
+
+	/** seek target frame (low 40 bits) and epoch (high 24 bits), swapped together by {@link #seek} */
+	static final int FRAME_BITS = 40;
+	static final long FRAME_MASK = (1L << FRAME_BITS) - 1;
+	static final int EPOCH_MASK = (1 << (64 - FRAME_BITS)) - 1;
+
+	// control (seek/setLoop)
+	private final AtomicLong seekState = new AtomicLong();
+	private volatile boolean loop;
+	private volatile boolean closed;
+
+	// producer (worker thread)
+	private volatile long filled;
+	private int readEpoch = -1;
+	private long readPos;
+	private boolean readEnded;
+
+	// consumer (RT thread)
+	private volatile long consumed;
+	private int playEpoch = -1;
+	private int frontOffset;
+	private boolean primed;
+	private volatile boolean ended;
+	private volatile long position;
+	private volatile long underruns;
+
+	public StreamFeed(MappedTrack track, boolean loop) {
+		this(track, loop, DEFAULT_BLOCKS);
+	}
+
+	public StreamFeed(MappedTrack track, boolean loop, int blocks) {
+		this.track = track;
+		this.loop = loop;
+		slots = blocks;
+		left = new float[blocks][BLOCK];
+		right = new float[blocks][BLOCK];
+		starts = new long[blocks];
+		lengths = new int[blocks];
+		epochs = new int[blocks];
+		lasts = new boolean[blocks];
+	}
+
+	/** restart playback at a track frame (any thread, lock-free); wake the worker after */
+	public void seek(long frame) {
+		long target = Math.max(0, Math.min(frame, track.frames() - 1));
+		long state;
+		do state = seekState.get();
+		while (!seekState.compareAndSet(state, (long) ((epoch(state) + 1) & EPOCH_MASK) << FRAME_BITS | target));
+	}
+
+	private static int epoch(long state) {
+		return (int) (state >>> FRAME_BITS);
+	}
+
+	/** @return negative if epoch a is older than b (epochs wrap) */
+	private static int compare(int a, int b) {
+		return (a - b) << (FRAME_BITS - 32);
+	}
+
+	/** loop back to the start at the end of the track, else stop there (one-shot) */
+	public void setLoop(boolean loop) {
+		this.loop = loop;
+	}
+
+	/** Worker thread: top up the ring (faults on the mapping happen here)
+	    @return true if any block was read */
+	boolean fill() {
+		final long total = track.frames();
+		if (total == 0) return false;
+		boolean work = false;
+		while (!closed) {
+			long state = seekState.get();
+			int epoch = epoch(state);
+			if (epoch != readEpoch) {
+				readEpoch = epoch;
+				readPos = state & FRAME_MASK;
+				readEnded = false;
+			}
+			if (readEnded || filled - consumed >= slots)
+				break;
+			long block = filled;
+			int slot = (int) (block % slots);
+			if (readPos >= total)
+				readPos = 0;
+			int n = (int) Math.min(BLOCK, total - readPos);
+			Arrays.fill(left[slot], 0, n, 0f);
+			Arrays.fill(right[slot], 0, n, 0f);
+			track.mix(readPos, left[slot], right[slot], 0, n, 1f);
+			starts[slot] = readPos;
+			lengths[slot] = n;
+			epochs[slot] = epoch;
+			readPos += n;
+			boolean last = readPos >= total && !loop;
+			lasts[slot] = last;
+			readEnded = last;
+			filled = block + 1; // publish
+			work = true;
+		}
+		return work;
+	}
+
+	/** RT thread: mix up to <code>len</code> frames into out[off..], scaled by gain
+	    @return frames mixed, fewer at the end of a one-shot ({@link #isEnded()}) or on underrun */
+	public int mix(float[] outL, float[] outR, int off, int len, float gain) {
+		long state = seekState.get();
+		int epoch = epoch(state);
+		if (epoch != playEpoch) {
+			playEpoch = epoch;
+			frontOffset = 0;
+			primed = false;
+			ended = false;
+			position = state & FRAME_MASK;
+		}
+		if (ended)
+			return 0;
+		int done = 0;
+		while (done < len) {
+			long c = consumed;
+			if (c == filled) {
+				if (primed)
+					underruns = underruns + 1;
+				break;
+			}
+			int slot = (int) (c % slots);
+			int age = compare(epochs[slot], epoch);
+			if (age < 0) { // from before a seek
+				consumed = c + 1;
+				frontOffset = 0;
+				continue;
+			}
+			if (age > 0) // a seek landed during this cycle, play it from the next
+				break;
+			primed = true;
+			int n = Math.min(len - done, lengths[slot] - frontOffset);
+			final float[] l = left[slot];
+			final float[] r = right[slot];
+			for (int i = 0, src = frontOffset, dst = off + done; i < n; i++, src++, dst++) {
+				outL[dst] += l[src] * gain;
+				outR[dst] += r[src] * gain;
+			}
+			done += n;
+			frontOffset += n;
+			long next = starts[slot] + frontOffset;
+			if (frontOffset == lengths[slot]) {
+				boolean last = lasts[slot];
+				frontOffset = 0;
+				consumed = c + 1;
+				if (last) {
+					ended = true;
+					position = next;
+					break;
+				}
+				if (next >= track.frames())
+					next = 0;
+			}
+			position = next;
+		}
+		return done;
+	}
+
+	/** @return track frame of the next frame to play */
+	public long position() {
+		return position;
+	}
+
+	/** @return true once a one-shot has played its last frame (until the next seek) */
+	public boolean isEnded() {
+		return ended;
+	}
+
+	/** @return cycles that found the ring empty since construction */
+	public long getUnderruns() {
+		return underruns;
+	}
+
+	/** @return blocks read ahead */
+	public int buffered() {
+		return (int) (filled - consumed);
+	}
+
+	public MappedTrack getTrack() {
+		return track;
+	}
+
+	/** stop feeding; the worker drops closed feeds */
+	public void close() {
+		closed = true;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+}
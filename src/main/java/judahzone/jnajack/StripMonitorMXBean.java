@@ -0,0 +1,15 @@
+package judahzone.jnajack;
+
+/** JMX view of one {@link judahzone.jnajack.fx.ChannelStrip}, see {@link EngineMonitor} */
+public interface StripMonitorMXBean {
+
+	/** @return RT effects in the strip's process chain */
+	int getActiveEffects();
+
+	/** @return summed latency (frames) of the active effects */
+	int getLatency();
+
+	/** @return deepest gain reduction (dB) of the strip's compressors on their last buffer */
+	float getGainReductionDb();
+
+}
@@ -0,0 +1,106 @@
+package judahzone.jnajack;
+
+import java.util.Arrays;
+
+import org.jaudiolibs.jnajack.JackClient;
+import org.jaudiolibs.jnajack.JackException;
+import org.jaudiolibs.jnajack.JackPosition;
+import org.jaudiolibs.jnajack.JackPositionBits;
+import org.jaudiolibs.jnajack.JackTransportState;
+
+import judahzone.jnajack.fx.JNATime;
+
+/** Reads the JACK transport at the top of every cycle and pushes BBT tempo changes straight
+    to the registered {@link JNATime} effects that are synced, on the RT thread, so tempo-locked
+    delays and choruses follow a ramp cycle by cycle. Needs a timebase master on the server. */
+public class TempoFeed {
+
+	/** ignore tempo jitter below this (bpm) */
+	static final float EPSILON = 0.001f;
+
+	/** an effect and the unit last pushed to it (0: none since it was last unsynced) */
+	private static final class Target {
+		final JNATime fx;
+		float unit;
+		Target(JNATime fx) {
+			this.fx = fx;
+		}
+	}
+
+	private final JackPosition position = new JackPosition();
+	private volatile Target[] targets = new Target[0];
+	private float last;
+	/** raw beats_per_minute of the last cycle, NaN before the first */
+	private double raw = Double.NaN;
+	private volatile float bpm;
+	private volatile boolean rolling;
+	private volatile long frame;
+
+	/** follow the transport tempo while fx {@link JNATime#isSync() is synced}, from the next cycle */
+	public synchronized void add(JNATime fx) {
+		for (Target existing : targets)
+			if (existing.fx == fx) return;
+		Target[] next = Arrays.copyOf(targets, targets.length + 1);
+		next[targets.length] = new Target(fx);
+		targets = next;
+	}
+
+	public synchronized void remove(JNATime fx) {
+		targets = Arrays.stream(targets).filter(t -> t.fx != fx).toArray(Target[]::new);
+	}
+
+	/** @return 1/16th note in milliseconds, the unit {@link JNATime#sync(float)} expects */
+	public static float unit(float bpm) {
+		return 15000f / bpm;
+	}
+
+	/** RT thread, top of the cycle. Pushes the tempo to every synced effect that hasn't got it yet:
+	    on a tempo change, and to effects newly added or switched to sync at a steady tempo. */
+	void cycle(JackClient client) {
+		final Target[] fx = targets;
+		if (fx.length == 0 || client == null) return;
+		try {
+			JackTransportState state = client.transportQuery(position);
+			rolling = state == JackTransportState.JackTransportRolling;
+		} catch (JackException e) {
+			return;
+		}
+		frame = position.getFrame();
+		double now = position.getBeatsPerMinute();
+		if (now != raw) { // getValid() builds an EnumSet, only check the BBT bit when the field moved
+			raw = now;
+			float tempo = (float) now;
+			if (tempo > 0 && Math.abs(tempo - last) >= EPSILON
+					&& position.getValid().contains(JackPositionBits.JackPositionBBT)) {
+				last = tempo;
+				bpm = tempo;
+			}
+		}
+		if (last <= 0)
+			return;
+		float unit = unit(last);
+		for (Target time : fx) {
+			if (!time.fx.isSync())
+				time.unit = 0;
+			else if (time.unit != unit) {
+				time.unit = unit;
+				time.fx.sync(unit);
+			}
+		}
+	}
+
+	/** @return last BBT tempo seen, 0 if none yet */
+	public float getBpm() {
+		return bpm;
+	}
+
+	public boolean isRolling() {
+		return rolling;
+	}
+
+	/** @return transport frame at the top of the last cycle */
+	public long getFrame() {
+		return frame;
+	}
+
+}
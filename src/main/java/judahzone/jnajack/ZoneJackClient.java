@@ -1,7 +1,15 @@
 package judahzone.jnajack;
 
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
 
 import org.jaudiolibs.jnajack.Jack;
 import org.jaudiolibs.jnajack.JackClient;
@@ -17,40 +25,138 @@ import org.jaudiolibs.jnajack.JackStatus;
 import judahzone.api.AudioEngine.Request;
 import judahzone.api.AudioEngine.Wrapper;
 import judahzone.util.RTLogger;
-import judahzone.util.Threads;
 import lombok.Getter;
 
 /** Creators of Jack clients must manually {@link #start()} the client.
     Once started the client will connect to Jack and call lifecycle events:
-    {@link #initialize()} and {@link #makeConnections()} */
+    {@link #initialize()} and {@link #makeConnections()}
+    <p>Lifecycle progress is observable through {@link #whenInitialized()},
+    {@link #whenActive()} and {@link #whenClosed()}; use {@link #startAll} to
+    bring several clients up in parallel.
+    <p>After activation this thread is the client's control plane: it drains
+    {@link JackRequests} and owns every graph mutation (register, connect, query),
+    so the JACK process callback never waits on the server's graph lock. */
 public abstract class ZoneJackClient extends Thread
     implements JackProcessCallback, JackShutdownCallback {
 
 	enum Status { NEW, INITIALISING, ACTIVE, CLOSING, TERMINATED, OVERDUBBED }
     static final EnumSet<JackOptions> OPTIONS = EnumSet.of(JackOptions.JackNoStartServer);
     static final EnumSet<JackStatus> STATUS = EnumSet.noneOf(JackStatus.class);
+    /** commands executed per control-plane pass */
+    static final int BATCH = 64;
+    /** control-plane idle timeout */
+    static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(251);
 
 
     protected final String clientName;
     protected final Jack jack;
-    protected JackClient jackclient;
+    protected volatile JackClient jackclient;
+    private volatile long cycleStart;
+    private volatile Thread rtThread;
+    /** the control loop is draining requests */
+    private volatile boolean controlling;
     protected final AtomicReference<Status> state =
     	new AtomicReference<>(Status.NEW);
+    private final CompletableFuture<JackClient> initialized = new CompletableFuture<>();
+    private final CompletableFuture<ZoneJackClient> active = new CompletableFuture<>();
+    private final CompletableFuture<Void> closed = new CompletableFuture<>();
 	@Getter protected JackRequests requests;
+	@Getter protected PortIndex ports;
+	/** process callback timing and xruns */
+	@Getter protected final CycleMeter meter = new CycleMeter();
+	/** ordered callback delivery for this client's requests */
+	@Getter protected final Notifier notifier;
+	/** spare ports, filled by subclasses in {@link #initialize()} */
+	@Getter protected final PortPool pool = new PortPool();
+	/** transport tempo pushed to synced time effects every cycle */
+	@Getter protected final TempoFeed tempo = new TempoFeed();
+	/** bounce state, see {@link #setFreewheel(boolean)} */
+	@Getter protected final Freewheel freewheel = new Freewheel();
+	/** port name -> processing latency (frames) of whatever feeds that port */
+	private final ConcurrentHashMap<String, IntSupplier> portLatency = new ConcurrentHashMap<>();
+	/** hands portLatency to the server, null if libjack's latency API isn't reachable */
+	private volatile LatencyReporter latencyReporter;
 
     public ZoneJackClient(String name) throws Exception {
     	clientName = name;
     	setPriority(Thread.MAX_PRIORITY);
     	setName(name);
     	jack = Jack.getInstance();
+    	notifier = new Notifier(this);
+    }
+
+    /** Start the clients together.
+        @return completes when every client is active, exceptionally if any fails to start */
+    public static CompletableFuture<Void> startAll(ZoneJackClient... clients) {
+    	CompletableFuture<?>[] all = new CompletableFuture<?>[clients.length];
+    	for (int i = 0; i < clients.length; i++) {
+    		clients[i].start();
+    		all[i] = clients[i].whenActive();
+    	}
+    	return CompletableFuture.allOf(all);
+    }
+
+    /** @return completes after {@link #initialize()}, before activation */
+    public CompletableFuture<JackClient> whenInitialized() {
+    	return initialized;
+    }
+
+    /** @return completes after activation and {@link #makeConnections()} */
+    public CompletableFuture<ZoneJackClient> whenActive() {
+    	return active;
+    }
+
+    /** @return completes once the JACK client is closed */
+    public CompletableFuture<Void> whenClosed() {
+    	return closed;
+    }
+
+    /** @return commands waiting for the control plane */
+    public int getQueueDepth() {
+    	return requests == null ? 0 : requests.size();
+    }
+
+    /** @return enqueue-to-completion timing of control-plane commands */
+    public JackRequests.Latency getLatency(JackRequests.Op op) {
+    	return requests == null ? null : requests.latency(op);
+    }
+
+    /** Declare the processing latency behind an output port, e.g. <code>strip::getLatency</code>.
+        Evaluated whenever JACK recomputes latencies; call {@link #updateLatency()} after toggling
+        effects. <code>null</code> clears it. */
+    public void declareLatency(JackPort port, IntSupplier frames) {
+    	if (frames == null)
+    		portLatency.remove(pool.nameOf(port));
+    	else
+    		portLatency.put(pool.nameOf(port), frames);
+    	updateLatency();
+    }
+
+    /** ask the server to re-read the declared latencies (not from a JACK callback) */
+    public void updateLatency() {
+    	LatencyReporter reporter = latencyReporter;
+    	if (reporter != null)
+    		reporter.recompute();
+    }
+
+    /** @return declared processing latency (frames) of the named port, 0 if none */
+    public int getPortLatency(String portName) {
+    	IntSupplier frames = portLatency.get(portName);
+    	return frames == null ? 0 : frames.getAsInt();
+    }
+
+    /** @return declared processing latency (frames) of every port that declared one */
+    public Map<String, Integer> getPortLatencies() {
+    	Map<String, Integer> result = new LinkedHashMap<>();
+    	portLatency.forEach((name, frames) -> result.put(name, frames.getAsInt()));
+    	return result;
     }
 
     /** Register the port on jackclient and invoke callback asynchronously. */
     protected void registerPort(Request req) throws JackException {
         JackPort port = registerPortAndReturn(req);
         if (req.callback() != null)
-        	Threads.execute(() -> req.callback().registered(req,
-        		new Wrapper(req.portName(), port)));
+        	notifier.registered(req, new Wrapper(req.portName(), port));
     }
 
     /** Register the port and return the created JackPort. */
@@ -60,19 +166,33 @@ public abstract class ZoneJackClient extends Thread
         return jackclient.registerPort(req.portName(), type, flags);
     }
 
-	/** Jack Client created but not started. Register ports in implementation. */
+	/** Jack Client created but not started. Register ports in implementation,
+	    and optionally {@link PortPool#fill spare ports} for channels created later. */
 	protected abstract void initialize() throws Exception;
 
 	/** Jack Client has been started */
 	protected abstract void makeConnections() throws Exception;
 
-    /** NOTE: blocks while Jack client is initialized */
+	/** JACK changed the period (process is suspended until this returns). Subclasses resize
+	    their work buffers and {@link judahzone.jnajack.fx.ChannelStrip#prepare(int) prepare} their strips here. */
+	protected void buffersizeChanged(int nframes) { }
+
+	/** JACK changed the sample rate. Subclasses re-{@link judahzone.jnajack.fx.ChannelStrip#prepare(int, int) prepare}
+	    their strips so coefficients and delay lengths follow the new rate. */
+	protected void sampleRateChanged(int rate) { }
+
+    /** NOTE: blocks until the Jack client is opened and initialized
+        @return null if the client failed to start or has been closed */
 	public JackClient getJackclient() {
+		JackClient result = jackclient;
+		if (result != null || closed.isDone())
+			return result;
 	    try {
-	    	while (jackclient == null)
-	    		Thread.sleep(10);
+	    	initialized.get();
     	} catch (InterruptedException e) {
     		Thread.currentThread().interrupt();
+    	} catch (ExecutionException e) {
+    		return null;
     	}
     	return jackclient;
     }
@@ -83,36 +203,132 @@ public abstract class ZoneJackClient extends Thread
             throw new IllegalStateException("" + state.get());
         try {
         	jackclient = jack.openClient(clientName, OPTIONS, STATUS);
+        	ports = new PortIndex(this, jackclient);
+        	jackclient.setPortRegistrationCallback(ports);
         	requests = new JackRequests(this);
+        	notifier.start();
             initialize();
-            Thread.sleep(1);
+            notifier.flush();
+            initialized.complete(jackclient);
 	        if (state.compareAndSet(Status.INITIALISING, Status.ACTIVE)) {
-                jackclient.setProcessCallback(this);
+                meter.setSampleRate(jackclient.getSampleRate());
+                jackclient.setProcessCallback(this::cycle);
+                jackclient.setXrunCallback(meter);
+                jackclient.setBuffersizeCallback((client, nframes) -> buffersizeChanged(nframes));
+                jackclient.setSampleRateCallback((client, rate) -> {
+                	meter.setSampleRate(rate);
+                	sampleRateChanged(rate);
+                });
                 jackclient.onShutdown(this);
+                latencyReporter = LatencyReporter.install(this, jackclient);
                 jackclient.activate();
                 makeConnections();
+                notifier.flush();
+                active.complete(this);
+		        controlling = true;
 		        while (state.get() == Status.ACTIVE)
-		            Thread.sleep(251);
+		        	controlPass();
+		        controlling = false;
 	        }
         } catch (Exception e) {
+        	controlling = false;
         	RTLogger.warn(this, e);
+        	initialized.completeExceptionally(e);
+        	active.completeExceptionally(e);
         }
         close();
 	}
 
+	/** instrumented entry point handed to JACK (or {@link NullJackDriver}), delegates to {@link #process(JackClient, int)} */
+	boolean cycle(JackClient client, int nframes) {
+		final long start = System.nanoTime();
+		cycleStart = start;
+		if (rtThread != Thread.currentThread())
+			rtThread = Thread.currentThread();
+		tempo.cycle(client);
+		boolean result = process(client, nframes);
+		final long end = System.nanoTime();
+		cycleStart = 0;
+		if (!freewheel.isRunning() || freewheel.cycle(nframes)) // decimated while freewheeling
+			meter.record(start, end, nframes);
+		return result;
+	}
+
+	/** @return nanoTime the running cycle started, 0 between cycles (for {@link StallWatchdog}) */
+	long getCycleStart() {
+		return cycleStart;
+	}
+
+	/** @return true until {@link #close()} starts */
+	boolean isOpen() {
+		Status s = state.get();
+		return s == Status.NEW || s == Status.INITIALISING || s == Status.ACTIVE;
+	}
+
+	/** @return true while this thread's control loop is draining {@link JackRequests} */
+	boolean isControlling() {
+		return controlling;
+	}
+
+	/** @return the thread that ran the last cycle */
+	Thread getRtThread() {
+		return rtThread;
+	}
+
+	/** Enter or leave freewheel (bounce) mode. JNAJack has no freewheel callback, so whoever
+	    switches the server to freewheel tells the client here. Leaving logs the bounce throughput. */
+	public void setFreewheel(boolean on) {
+		if (on) {
+			freewheel.start(meter.getSampleRate());
+			return;
+		}
+		if (!freewheel.isRunning()) return;
+		Freewheel.Bounce bounce = freewheel.stop();
+		RTLogger.debug(this, String.format("bounced %.1fs in %.1fs (%.1fx realtime)",
+				bounce.seconds(), bounce.elapsedNanos() / 1e9f, bounce.realtimeFactor()));
+	}
+
+	/** one control-plane pass: execute queued graph commands, refresh the port index, else park */
+	private void controlPass() {
+		int done = requests.drain(BATCH);
+		notifier.flush(); // one wakeup per pass
+		if (ports.isDirty()) {
+			try {
+				ports.fresh();
+			} catch (JackException e) {
+				RTLogger.warn(this, e);
+			}
+		}
+		else if (done == 0)
+			LockSupport.parkNanos(this, IDLE_NANOS);
+	}
+
 	public void close() {
 		if (Status.TERMINATED == state.get()) return;
 		state.set(Status.CLOSING);
-		System.out.println("Closing Jack client " + clientName);
-		if (jackclient != null) {
+		LockSupport.unpark(this); // control plane exits now, not at its idle timeout
+		notifier.close();
+		JackClient client = jackclient;
+		jackclient = null;
+		if (client != null) {
+			System.out.println("Closing Jack client " + clientName);
+			JackRequests queue = requests;
 	        try {
-	            jackclient.close();
-	            state.set(Status.TERMINATED);
-	            jackclient = null;
+	        	if (queue == null)
+	        		client.close();
+	        	else synchronized (queue) { // not while a drain is using the client (any thread may close)
+	        		client.close();
+	        	}
 	        } catch (Throwable t) {
 	        	System.err.println(t.getMessage());
 	        }
 		}
+		latencyReporter = null; // only now: JACK may call its JNA callback until the client is closed
+		state.set(Status.TERMINATED);
+		IllegalStateException notStarted = new IllegalStateException(clientName + " closed");
+		initialized.completeExceptionally(notStarted);
+		active.completeExceptionally(notStarted);
+		closed.complete(null);
     }
 
     @Override
@@ -0,0 +1,133 @@
+package judahzone.jnajack.fx;
+
+import java.lang.invoke.VarHandle;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Recent stereo blocks of a {@link ChannelStrip}, for meters, scopes and recorders.
+    The RT thread {@link #write}s one block per cycle (a bulk copy, no locks, no allocation);
+    any number of readers copy blocks out at their own pace. Each slot is guarded by a sequence
+    number (odd while being written), so a reader never returns a torn block: it gets the block,
+    or learns it was overwritten. Readers that fall more than {@link #size()} blocks behind skip ahead. */
+public class AudioTap {
+
+	public static final int DEFAULT_BLOCKS = 64;
+
+	/** consumer cursor, one per reader thread */
+	public class Reader {
+		private long next = written();
+		private long missed;
+
+		/** copy the oldest unread block
+		    @return frames copied, 0 if nothing new */
+		public int next(float[] l, float[] r) {
+			while (true) {
+				long head = written();
+				if (next >= head)
+					return 0;
+				if (head - next > slots) { // lapped
+					missed += head - slots - next;
+					next = head - slots;
+				}
+				int frames = read(next, l, r);
+				if (frames >= 0) {
+					next++;
+					return frames;
+				}
+				missed++; // overwritten while copying
+				next++;
+			}
+		}
+
+		/** @return blocks skipped because this reader fell behind */
+		public long getMissed() {
+			return missed;
+		}
+	}
+
+	private final int slots;
+	private final AtomicLongArray seq;
+	private final int[] frames;
+	private float[][] left;
+	private float[][] right;
+	/** blocks published */
+	private volatile long count;
+
+	public AudioTap(int maxFrames) {
+		this(DEFAULT_BLOCKS, maxFrames);
+	}
+
+	public AudioTap(int blocks, int maxFrames) {
+		slots = blocks;
+		seq = new AtomicLongArray(blocks);
+		frames = new int[blocks];
+		left = new float[blocks][maxFrames];
+		right = new float[blocks][maxFrames];
+	}
+
+	/** Period grew (RT processing stopped, see {@link ChannelStrip#prepare(int, int)}).
+	    The kept blocks are dropped: readers get -1 for them, not zeroed arrays under a valid seq. */
+	void prepare(int maxFrames) {
+		if (maxFrames <= left[0].length)
+			return;
+		for (int i = 0; i < slots; i++)
+			seq.set(i, 1); // odd, never stable: unreadable until write() reaches the slot again
+		VarHandle.storeStoreFence();
+		left = new float[slots][maxFrames];
+		right = new float[slots][maxFrames];
+	}
+
+	/** RT thread only: publish the buffers' current period as the next block */
+	public void write(FloatBuffer l, FloatBuffer r) {
+		long block = count;
+		int slot = (int) (block % slots);
+		int n = Math.min(l.limit(), left[slot].length);
+		long version = block / slots * 2; // from the lap, not the slot's history (see prepare)
+		seq.set(slot, version + 1); // odd: writing
+		VarHandle.storeStoreFence();
+		l.get(0, left[slot], 0, n);
+		r.get(0, right[slot], 0, n);
+		frames[slot] = n;
+		seq.set(slot, version + 2);
+		count = block + 1;
+	}
+
+	/** Any thread: copy a block (by absolute index, see {@link #written()})
+	    @return frames copied, or -1 if the block is not written yet or was overwritten */
+	public int read(long block, float[] l, float[] r) {
+		if (block < 0 || block >= count || count - block > slots)
+			return -1;
+		int slot = (int) (block % slots);
+		long version = seq.get(slot);
+		if ((version & 1) != 0 || version / 2 != block / slots + 1)
+			return -1; // being written, or a later lap
+		final float[] srcL = left[slot];
+		final float[] srcR = right[slot];
+		int n = Math.min(Math.min(frames[slot], srcL.length), Math.min(l.length, r.length));
+		System.arraycopy(srcL, 0, l, 0, n);
+		System.arraycopy(srcR, 0, r, 0, n);
+		VarHandle.loadLoadFence();
+		return seq.get(slot) == version ? n : -1;
+	}
+
+	/** @return blocks published since construction; the newest is <code>written() - 1</code> */
+	public long written() {
+		return count;
+	}
+
+	/** @return blocks kept */
+	public int size() {
+		return slots;
+	}
+
+	/** @return frames held per block */
+	public int capacity() {
+		return left[0].length;
+	}
+
+	/** @return a cursor starting at the next block written */
+	public Reader reader() {
+		return new Reader();
+	}
+
+}
@@ -4,7 +4,11 @@ import java.nio.FloatBuffer;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import judahzone.jnajack.Freewheel;
 import judahzone.jnajack.fx.JNAEffect.RTEffect;
 import judahzone.util.Constants;
 
@@ -17,8 +21,9 @@ public class ChannelStrip {
     protected static final int S_RATE = Constants.sampleRate();
 
     // per-channel working buffers (owned here so GUI, headless and analyzers share the same buffers)
-    protected final FloatBuffer left = FloatBuffer.wrap(new float[N_FRAMES]);
-    protected final FloatBuffer right = FloatBuffer.wrap(new float[N_FRAMES]);
+    // limit() is the current period, capacity the largest seen (see prepare)
+    protected FloatBuffer left = FloatBuffer.wrap(new float[N_FRAMES]);
+    protected FloatBuffer right = FloatBuffer.wrap(new float[N_FRAMES]);
 
     // RT effects known to the channel
     protected final ArrayList<RTEffect> rt = new ArrayList<>();
@@ -38,6 +43,46 @@ public class ChannelStrip {
     // fx activate/deactivate flag
     private volatile boolean activeDirty = false;
 
+    // size and summed latency of the RT chain, published by hotSwap for other threads
+    private volatile int activeCount;
+    private volatile int latency;
+
+    // current server sample rate, see prepare
+    private int sampleRate = S_RATE;
+
+    // optional copy of the processed output for meters/scopes, null when off
+    private volatile AudioTap tap;
+
+    // optional per-effect timing, null when off
+    private volatile EffectMeter meter;
+    private int cycles; // RT thread, decimates metering while freewheeling
+
+    // effect being processed, per processing thread (set only while tracing), for stall diagnostics
+    private static final ConcurrentHashMap<Thread, AtomicReference<RTEffect>> crumbs = new ConcurrentHashMap<>();
+    private static final AtomicInteger tracers = new AtomicInteger();
+    private static volatile boolean tracing;
+
+    /** Leave a breadcrumb of the running effect (cheap release stores), see {@link #running(Thread)}.
+     *  Reference counted: tracing stays on until every caller that turned it on turns it off. */
+    public static void setTracing(boolean on) {
+        int count = on ? tracers.incrementAndGet() : tracers.updateAndGet(n -> Math.max(0, n - 1));
+        tracing = count > 0;
+        if (count == 0)
+            crumbs.clear();
+    }
+
+    /** @return effect in process() on the given thread right now, null if none or not tracing */
+    public static RTEffect running(Thread thread) {
+        AtomicReference<RTEffect> result = crumbs.get(thread);
+        return result == null ? null : result.get();
+    }
+
+    /** @return the calling thread's breadcrumb (allocated once per thread and tracing session) */
+    private static AtomicReference<RTEffect> crumb() {
+        AtomicReference<RTEffect> result = crumbs.get(Thread.currentThread());
+        return result != null ? result : crumbs.computeIfAbsent(Thread.currentThread(), t -> new AtomicReference<>());
+    }
+
     protected ChannelStrip() {
         pendingActive.addAll(active);
     }
@@ -52,15 +97,97 @@ public class ChannelStrip {
         }
     }
 
-    /** Provide external access to the channel work buffers for offline analysis/capture */
+    /** Provide external access to the channel work buffers for offline analysis/capture.
+     *  The RT thread rewrites them every cycle; live readers use {@link #setTap(AudioTap) a tap}. */
     public FloatBuffer getLeft() { return left; }
     public FloatBuffer getRight() { return right; }
 
+    /** Period size changed (JACK buffer-size callback, RT processing stopped): size the work
+     *  buffers and let every effect resize its scratch. Buffers only grow; a smaller period just
+     *  lowers limit(). */
+    public void prepare(int frames) {
+        prepare(sampleRate, frames);
+    }
+
+    /** Server sample rate and/or period changed: effects recompute coefficients, delay lengths
+     *  and time constants, then size their scratch. */
+    public void prepare(int sampleRate, int frames) {
+        this.sampleRate = sampleRate;
+        if (frames > left.capacity()) {
+            left = FloatBuffer.wrap(new float[frames]);
+            right = FloatBuffer.wrap(new float[frames]);
+        }
+        left.clear().limit(frames);
+        right.clear().limit(frames);
+        AudioTap t = tap;
+        if (t != null)
+            t.prepare(frames);
+        for (JNAEffect fx : effects)
+            fx.prepare(sampleRate, frames);
+        latency = sumLatency(active); // RT processing is stopped
+    }
+
+    /** @return summed latency (frames) of the RT effects in the chain as of the last cycle (any thread) */
+    public int getLatency() {
+        return latency;
+    }
+
+    private static int sumLatency(List<RTEffect> chain) {
+        int result = 0;
+        for (RTEffect fx : chain)
+            result += fx.getLatency();
+        return result;
+    }
+
     /** process active real-time effects on the supplied buffers */
     public void process(FloatBuffer l, FloatBuffer r) {
         hotSwap();
-        for (RTEffect fx : active)
+        final EffectMeter m = meter;
+        final AtomicReference<RTEffect> running = tracing ? crumb() : null;
+        final boolean trace = running != null;
+        if (m == null || (Freewheel.isOn() && cycles++ % Freewheel.DECIMATE != 0)) {
+            for (RTEffect fx : active) {
+                if (trace) running.lazySet(fx);
                 fx.process(l, r);
+            }
+        } else {
+            for (RTEffect fx : active) {
+                if (trace) running.lazySet(fx);
+                long start = System.nanoTime();
+                fx.process(l, r);
+                m.record(m.slot(fx), System.nanoTime() - start);
+            }
+        }
+        if (trace) running.lazySet(null);
+        final AudioTap t = tap;
+        if (t != null)
+            t.write(l, r);
+    }
+
+    /** copy every processed block into a ring that GUI threads read without locks, null for off */
+    public void setTap(AudioTap tap) {
+        if (tap != null)
+            tap.prepare(left.capacity());
+        this.tap = tap;
+    }
+
+    public AudioTap getTap() {
+        return tap;
+    }
+
+    /** turn per-effect CPU accounting on (fresh counters) or off */
+    public void setMetering(boolean on) {
+        meter = on ? new EffectMeter(rt) : null;
+    }
+
+    public boolean isMetering() {
+        return meter != null;
+    }
+
+    /** @return per-effect timing since metering was turned on, empty if off */
+    public List<EffectMeter.Stats> getMetering() {
+        EffectMeter m = meter;
+        return m == null ? List.of() : m.snapshot();
     }
 
     // pass gui changes to the rt thread
@@ -69,6 +196,8 @@ public class ChannelStrip {
             active.clear();
             active.addAll(pendingActive);
             activeDirty = false;
+            activeCount = active.size();
+            latency = sumLatency(active);
         }
     }
 
@@ -149,6 +278,11 @@ public class ChannelStrip {
         return offline.contains(effect);
     }
 
+    /** @return RT effects in the process chain as of the last cycle (any thread) */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
     public List<JNAEffect> listAll() {
     	return new ArrayList<JNAEffect>(effects);
     }
@@ -0,0 +1,77 @@
+package judahzone.jnajack.fx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import judahzone.jnajack.fx.JNAEffect.RTEffect;
+
+/** Per-effect process() timing for one {@link ChannelStrip}.
+    Written only by the RT thread (lazySet counters, see {@link judahzone.jnajack.CycleMeter}),
+    allocation-free; any thread may take a {@link #snapshot()}.
+    Percentiles come from a log2 histogram of nanoseconds (bucket i holds 2^i .. 2^(i+1) ns). */
+public class EffectMeter {
+
+	public static final int BUCKETS = 32;
+
+	public record Stats(String name, long count, long meanNanos, long maxNanos, long p50Nanos, long p99Nanos) { }
+
+	private final RTEffect[] effects;
+	private final AtomicLongArray count;
+	private final AtomicLongArray total;
+	private final AtomicLongArray max;
+	private final AtomicLongArray histogram; // effects.length * BUCKETS
+
+	public EffectMeter(List<RTEffect> effects) {
+		this.effects = effects.toArray(new RTEffect[0]);
+		int n = this.effects.length;
+		count = new AtomicLongArray(n);
+		total = new AtomicLongArray(n);
+		max = new AtomicLongArray(n);
+		histogram = new AtomicLongArray(n * BUCKETS);
+	}
+
+	/** @return index of the effect or -1 if it was not known when metering started */
+	int slot(RTEffect fx) {
+		for (int i = 0; i < effects.length; i++)
+			if (effects[i] == fx)
+				return i;
+		return -1;
+	}
+
+	/** RT thread: account one process() call */
+	void record(int slot, long nanos) {
+		if (slot < 0) return;
+		count.lazySet(slot, count.get(slot) + 1);
+		total.lazySet(slot, total.get(slot) + nanos);
+		if (nanos > max.get(slot))
+			max.lazySet(slot, nanos);
+		int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+		int idx = slot * BUCKETS + bucket;
+		histogram.lazySet(idx, histogram.get(idx) + 1);
+	}
+
+	public List<Stats> snapshot() {
+		List<Stats> result = new ArrayList<>(effects.length);
+		for (int i = 0; i < effects.length; i++) {
+			long n = count.get(i);
+			result.add(new Stats(effects[i].getName(), n, n == 0 ? 0 : total.get(i) / n,
+					max.get(i), percentile(i, n, 0.5f), percentile(i, n, 0.99f)));
+		}
+		return result;
+	}
+
+	/** @return upper bound (ns) of the bucket holding percentile p of effect slot */
+	private long percentile(int slot, long n, float p) {
+		if (n == 0) return 0;
+		long target = (long) Math.ceil(p * n);
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += histogram.get(slot * BUCKETS + b);
+			if (seen >= target)
+				return 1L << (b + 1);
+		}
+		return max.get(slot);
+	}
+
+}
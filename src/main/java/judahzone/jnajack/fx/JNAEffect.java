@@ -12,7 +12,9 @@ import judahzone.util.Constants;
 /** JNA uses FloatBuffers rather than float[] */
 public interface JNAEffect {
 
+	/** start-up sample rate; the server's current rate arrives in {@link #prepare(int, int)} */
 	int SAMPLE_RATE = Constants.sampleRate();
+	/** start-up buffer size; process() handles buffer.limit() frames, see {@link #prepare(int, int)} */
 	int N_FRAMES = Constants.bufSize();
 
     String getName();
@@ -21,6 +23,15 @@ public interface JNAEffect {
 
     default void activate() {}
 
+    /** Called off the RT thread (JACK buffer-size or sample-rate callback) before buffers of up
+     * to maxFrames arrive at sampleRate. Recompute rate-dependent coefficients and allocate any
+     * size-dependent state here, then publish it with a single reference write so process()
+     * never sees half-swapped state. */
+    default void prepare(int sampleRate, int maxFrames) {}
+
+    /** @return frames of delay this effect adds to the signal (lookahead, block-based processing) */
+    default int getLatency() { return 0; }
+
     int getParamCount();
 
     /**@param idx parameter setting to change
@@ -30,7 +41,8 @@ public interface JNAEffect {
     /**@return value of setting idx scaled from 0 to 100 */
     int get(int idx);
 
-    /** do the work
+    /** do the work. Buffers may be JACK port memory (direct, native order): move whole
+     * blocks with absolute bulk get/put into scratch arrays rather than views or per-sample calls.
      * @param right null for mono effect */
     void process(FloatBuffer left, FloatBuffer right);
 
@@ -16,6 +16,7 @@ public interface JNATime extends JNAEffect {
 
 	void setSync(boolean sync);
 	boolean isSync();
+	/** @param unit a 1/16th note in milliseconds (15000 / bpm) */
 	void sync(float unit);
 
 }
\ No newline at end of file
@@ -38,14 +38,15 @@ public class JackBiquad {
 
 	public static final float LOG_2  = 0.693147f;
 	static final float MAX_WIDTH = 5f;
-	private static final int N_FRAMES = Constants.bufSize();
-	private static final float SAMPLE_RATE = Constants.sampleRate();
 
 	protected float frequency;
 	protected float bandwidth;
 	protected float gain_db = 0;
 	protected FilterType filter_type;
 	protected BWQType bwq_type = BWQType.BW;
+	private float sampleRate = Constants.sampleRate();
+	/** block copied out of the (native) port buffer, filtered in place, copied back */
+	private float[] io = new float[JNAEffect.N_FRAMES];
 	private final Biquad left, right;
 
 	// current coefficients
@@ -79,7 +80,7 @@ public class JackBiquad {
 
 	public void coefficients() {
 		float a = (float)(Math.pow(10.0, gain_db/40.0));
-		float w0 = (float)(2.0*Math.PI*frequency/SAMPLE_RATE);
+		float w0 = (float)(2.0*Math.PI*frequency/sampleRate);
 		float sinw0 = (float)Math.sin(w0);
 		float cosw0 = (float)Math.cos(w0);
 		float alpha = 0f;
@@ -113,6 +114,15 @@ public class JackBiquad {
 		coeffDirty = true;
 	}
 
+	/** server rate or period changed: same frequency, new coefficients, scratch to fit */
+	public void prepare(int rate, int maxFrames) {
+		if (io.length != maxFrames)
+			io = new float[maxFrames];
+		if (rate == sampleRate) return;
+		sampleRate = rate;
+		coefficients();
+	}
+
 	public static float gainDb(int val) {
 	    float result = Math.abs(50 - val) / 2f;
 	    if (val < 50) result *= -1;
@@ -150,6 +160,11 @@ public class JackBiquad {
 
 		void processBuffer(FloatBuffer buff) {
 			buff.rewind();
+			final float[] buf = io;
+			final int frames = Math.min(buff.limit(), buf.length);
+			if (frames == 0)
+				return;
+			buff.get(0, buf, 0, frames); // one bounds check, then plain array access
 
 			// If we don't have previous coefficients yet, just use current ones, no smoothing
 			if (!haveLastCoeffs ||
@@ -163,13 +178,13 @@ public class JackBiquad {
 				final float la1 = a1;
 				final float la2 = a2;
 
-				for (int i = 0; i < N_FRAMES; i++) {
-					float xn = buff.get(i);
+				for (int i = 0; i < frames; i++) {
+					float xn = buf[i];
 					float yn = (lb0 * xn + lb1 * xn1 + lb2 * xn2
 					            - la1 * yn1 - la2 * yn2) / la0;
 					if (Math.abs(yn) < 1.0E-8f)
 						yn = 0f; // de-normalize
-					buff.put(i, yn);
+					buf[i] = yn;
 					xn2 = xn1;
 					xn1 = xn;
 					yn2 = yn1;
@@ -185,14 +200,14 @@ public class JackBiquad {
 				float curB1 = lastB1;
 				float curB2 = lastB2;
 
-				final float dA0 = (a0 - lastA0) / N_FRAMES;
-				final float dA1 = (a1 - lastA1) / N_FRAMES;
-				final float dA2 = (a2 - lastA2) / N_FRAMES;
-				final float dB0 = (b0 - lastB0) / N_FRAMES;
-				final float dB1 = (b1 - lastB1) / N_FRAMES;
-				final float dB2 = (b2 - lastB2) / N_FRAMES;
+				final float dA0 = (a0 - lastA0) / frames;
+				final float dA1 = (a1 - lastA1) / frames;
+				final float dA2 = (a2 - lastA2) / frames;
+				final float dB0 = (b0 - lastB0) / frames;
+				final float dB1 = (b1 - lastB1) / frames;
+				final float dB2 = (b2 - lastB2) / frames;
 
-				for (int i = 0; i < N_FRAMES; i++) {
+				for (int i = 0; i < frames; i++) {
 					curA0 += dA0;
 					curA1 += dA1;
 					curA2 += dA2;
@@ -200,12 +215,12 @@ public class JackBiquad {
 					curB1 += dB1;
 					curB2 += dB2;
 
-					float xn = buff.get(i);
+					float xn = buf[i];
 					float yn = (curB0 * xn + curB1 * xn1 + curB2 * xn2
 					            - curA1 * yn1 - curA2 * yn2) / curA0;
 					if (Math.abs(yn) < 1.0E-8f)
 						yn = 0f;
-					buff.put(i, yn);
+					buf[i] = yn;
 					xn2 = xn1;
 					xn1 = xn;
 					yn2 = yn1;
@@ -213,6 +228,8 @@ public class JackBiquad {
 				}
 			}
 
+			buff.put(0, buf, 0, frames);
+
 			// At the end of this block, current coeffs become "last" for the next one
 			lastA0 = a0;
 			lastA1 = a1;
@@ -52,6 +52,8 @@ public class JackChorus implements JNATime, RTEffect {
     private static final float defaultRate = 1.4f;
     private static final float defaultDepth = 0.4f;
     private static final float defaultFeedback = 0.4f;
+    /** delay line must outlast the deepest modulated delay (1.5 ms) regardless of buffer size */
+    private static final float MIN_WORK = 0.002f; // seconds
 
     @Setter @Getter boolean sync;
     @Setter @Getter String type = TYPE[0];
@@ -65,6 +67,7 @@ public class JackChorus implements JNATime, RTEffect {
     /** between 0 and 1 */
     @Getter @Setter private float phase = 0.42f;
 
+    private int sampleRate = SAMPLE_RATE;
     private final LFODelay leftDsp = new LFODelay();
     private final LFODelay rightDsp = new LFODelay();
 
@@ -130,10 +133,21 @@ public class JackChorus implements JNATime, RTEffect {
         rightDsp.processReplace(right);
     }
 
+    @Override
+    public void prepare(int sampleRate, int maxFrames) {
+        this.sampleRate = sampleRate;
+        leftDsp.prepare(maxFrames);
+        rightDsp.prepare(maxFrames);
+    }
+
+    private static int workSize(int sampleRate, int frames) {
+        return Math.max(frames, (int) (MIN_WORK * sampleRate) + 4);
+    }
+
     private class LFODelay {
         private int lfocount;
         @Setter float delay = depth * 0.001f;
-        float[] workArea = new float[N_FRAMES];
+        float[] workArea = new float[workSize(SAMPLE_RATE, N_FRAMES)];
         float range = 0.5f;
         float delayTime;
         int rovepos;
@@ -143,10 +157,19 @@ public class JackChorus implements JNATime, RTEffect {
         float fbFilterState = 0f;
         final float fbCut = 0.25f; // 0..1, smaller -> stronger lowpass (tune to taste)
 
-        void goFigure() {
+        void prepare(int maxFrames) {
+            int size = workSize(sampleRate, maxFrames);
+            if (size != workArea.length) {
+                rovepos = 0;
+                lastdelay = delayTime * sampleRate;
+                workArea = new float[size];
+            }
+        }
+
+        void goFigure(int frames) {
             if (rate > 0.01 && range > 0) {
-                lfocount += N_FRAMES;
-                float lfolength = SAMPLE_RATE / rate;
+                lfocount += frames;
+                float lfolength = sampleRate / rate;
                 lfocount %= (int) (lfolength);
                 float r = lfocount / lfolength;
                 r *= PI2;
@@ -164,20 +187,22 @@ public class JackChorus implements JNATime, RTEffect {
 
         void processReplace(FloatBuffer buf) {
 
-            goFigure();
             buf.rewind();
-            float delay = delayTime * SAMPLE_RATE;
+            final int frames = buf.limit();
+            if (frames == 0) return;
+            goFigure(frames);
+            float delay = delayTime * sampleRate;
             float ldelay = lastdelay;
 
             float[] work = workArea;
             int rnlen = work.length;
-            int pos = rovepos;
-            float delta = (delay - ldelay) / N_FRAMES;
+            int pos = rovepos % rnlen;
+            float delta = (delay - ldelay) / frames;
             float fb = feedback;
 
             float r, s, a, b, o;
             int ri;
-            for (int i = 0; i < N_FRAMES; i++) {
+            for (int i = 0; i < frames; i++) {
                 r = pos - (ldelay + 2) + rnlen;
                 ri = (int) r;
                 s = r - ri;
@@ -203,18 +228,20 @@ public class JackChorus implements JNATime, RTEffect {
         @SuppressWarnings("unused")
         public void processAdd(FloatBuffer buf) {
 
-            goFigure();
             buf.rewind();
-            float delay = delayTime * SAMPLE_RATE;
+            final int frames = buf.limit();
+            if (frames == 0) return;
+            goFigure(frames);
+            float delay = delayTime * sampleRate;
             float ldelay = lastdelay;
 
             int rnlen = workArea.length;
-            int pos = rovepos;
-            float delta = (delay - ldelay) / N_FRAMES;
+            int pos = rovepos % rnlen;
+            float delta = (delay - ldelay) / frames;
 
             float r, s, a, b, o;
             int ri;
-            for (int i = 0; i < N_FRAMES; i++) {
+            for (int i = 0; i < frames; i++) {
                 r = pos - (ldelay + 2) + rnlen;
                 ri = (int) r;
                 s = r - ri;
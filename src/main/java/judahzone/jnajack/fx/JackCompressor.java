@@ -43,10 +43,10 @@ public class JackCompressor implements RTEffect {
     // Max GR we normalize against, in dB - useful for tuning line-level response
     private static final float MAX_REDUCTION_DB = 30f;
 
-    // dB of gain reduction on the last processed buffer.  0 to MAX_REDUCTION_DB
-    @Getter private float lastReductionDb = 0f;
+    // dB of gain reduction on the last processed buffer.  0 to MAX_REDUCTION_DB (read by monitoring)
+    @Getter private volatile float lastReductionDb = 0f;
 
-    private final double cSAMPLE_RATE = 1.0/SAMPLE_RATE;;
+    private double cSAMPLE_RATE = 1.0/SAMPLE_RATE;
 
     private float lvolume = 00f;
     private int tratio = 4;
@@ -80,6 +80,7 @@ public class JackCompressor implements RTEffect {
     @Override
     public void reset() {
         boost_old = 1.0f;
+        lastReductionDb = 0f;
         setThreshold(-16);
         setRatio(7);
         setBoost(-14);
@@ -88,6 +89,14 @@ public class JackCompressor implements RTEffect {
         set(Settings.Attack. ordinal(), get(Settings.Release.ordinal()));
     }
 
+    /** new server rate: keep attack/release times in milliseconds */
+    @Override
+    public void prepare(int sampleRate, int maxFrames) {
+        cSAMPLE_RATE = 1.0 / sampleRate;
+        setAttack(attStash);
+        setRelease(relStash);
+    }
+
     public static float dB2rap(double dB) {
         return (float)((Math.exp((dB)*LOG_10/20.0f)));
     }
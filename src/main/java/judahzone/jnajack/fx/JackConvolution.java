@@ -16,7 +16,7 @@ import lombok.Getter;
 
 /**
  * Jack-optimized Convolution (assumes FloatBuffer instances are NOT array-backed
- * and uses direct FloatBuffer get/put APIs for IO).
+ * and moves each block with one absolute bulk get/put, no views or per-sample IO).
  */
 public abstract class JackConvolution implements JNAEffect {
 
@@ -36,6 +36,18 @@ public abstract class JackConvolution implements JNAEffect {
     @Getter protected final int paramCount = Settings.values().length;
     @Override public List<String> getSettingNames() { return names; }
 
+    /** server rate seen by the last prepare */
+    protected int sampleRate = SAMPLE_RATE;
+
+    /** IR spectra come from the DB at its own rate and are not resampled: warn when the server rate moves off it */
+    protected void rate(int rate) {
+        if (rate == sampleRate)
+            return;
+        sampleRate = rate;
+        if (rate != SAMPLE_RATE)
+            RTLogger.warn(this, "Impulse responses are " + SAMPLE_RATE + " Hz, server runs " + rate);
+    }
+
     // ======================================================================
     /** Wrapper around 2 Mono Convolvers */
     public static class Stereo extends JackConvolution implements RTEffect {
@@ -48,6 +60,12 @@ public abstract class JackConvolution implements JNAEffect {
             rightIR.set(idx, value);
         }
 
+        @Override public void prepare(int sampleRate, int maxFrames) {
+            rate(sampleRate); // one warning for the pair
+            leftIR.sampleRate = sampleRate;
+            rightIR.sampleRate = sampleRate;
+        }
+
         @Override public void process(FloatBuffer l, FloatBuffer r) {
             leftIR.process(l);
             rightIR.process(r);
@@ -66,21 +84,20 @@ public abstract class JackConvolution implements JNAEffect {
         protected final FFT fft = new FFT(FFT_SIZE);
         protected final FFT ifft = new FFT(FFT_SIZE);
 
-        protected final int overlapSize = FFT_SIZE - N_FRAMES;
-
         // pointer to currently selected IR spectrum (from DB)
         protected float[] irFreq = new float[FFT_SIZE * 2];
         protected float wet = 0.9f;
         protected int cabinet = -1; // lazy load
 
-        // instance working buffers (allocated once)
+        // instance working buffers (allocated once), sized for any period up to FFT_SIZE
         protected final float[] fftInOut = new float[FFT_SIZE * 2];
-        protected final float[] overlap = new float[overlapSize];
-        protected final float[] work0 = new float[N_FRAMES];
-        protected final float[] work1 = new float[N_FRAMES];
+        /** last FFT_SIZE input samples, newest at the end (overlap-save for any block size) */
+        protected final float[] history = new float[FFT_SIZE];
+        protected final float[] work0 = new float[FFT_SIZE];
+        protected final float[] work1 = new float[FFT_SIZE];
 
         @Override public void reset() {
-            Arrays.fill(overlap, 0f);
+            Arrays.fill(history, 0f);
         }
 
         @Override public void set(int idx, int value) {
@@ -112,6 +129,10 @@ public abstract class JackConvolution implements JNAEffect {
             throw new InvalidParameterException("Unknown param index: " + idx);
         }
 
+        @Override public void prepare(int sampleRate, int maxFrames) {
+            rate(sampleRate);
+        }
+
         @Override
         public void activate() {
             if (cabinet < 0)  // first time (DB allowed to load)
@@ -131,101 +152,36 @@ public abstract class JackConvolution implements JNAEffect {
 
 
         /** Convolve Add and make stereo, even if dry/inactive
-         *  This implementation reads input using direct FloatBuffer.get(index)
-         *  and writes output using direct FloatBuffer.put(index), avoiding any
-         *  assumption that the FloatBuffer is backed by an accessible array.
+         *  Absolute bulk get/put move the block without touching the caller's
+         *  buffer positions and without assuming an accessible backing array.
          */
         public void monoToStereo(FloatBuffer mono, FloatBuffer stereo) {
-            // If fully dry just copy samples from mono->stereo using direct buffer ops
+            // If fully dry just copy samples from mono->stereo
             if (wet <= 0f) {
-                FloatBuffer inDup = mono.duplicate();
-                FloatBuffer outDup = stereo.duplicate();
-                inDup.rewind();
-                outDup.rewind();
-                for (int i = 0; i < N_FRAMES; i++) {
-                    float v = inDup.get(i);
-                    outDup.put(i, v);
-                }
+                stereo.put(0, mono, 0, Math.min(mono.limit(), stereo.limit()));
                 return;
             }
-            float dryGain = 1.0f - wet;
-            float wetGain = wet;
-
-            // Read input block without disturbing caller's buffer position
-            FloatBuffer inBuf = mono.duplicate();
-            inBuf.rewind();
-            for (int i = 0; i < N_FRAMES; i++) {
-                work0[i] = inBuf.get(i);
-            }
-
-            // Prepare FFT input (real time samples in indices 0..FFT_SIZE-1)
-            Arrays.fill(fftInOut, 0f);
-
-            // Compose the overlap-save input: [previous overlap | new block]
-            System.arraycopy(overlap, 0, fftInOut, 0, overlapSize);
-            System.arraycopy(work0, 0, fftInOut, overlapSize, N_FRAMES);
-
-            // Save next overlap for the following block: last (FFT_SIZE - N_FRAMES) samples of this composite input
-            System.arraycopy(fftInOut, N_FRAMES, overlap, 0, overlapSize);
-
-            // Forward FFT (in-place, produces complex interleaved in fftInOut)
-            fft.forwardTransform(fftInOut);
-
-            // Complex multiply with IR spectrum (irFreq is complex interleaved)
-            for (int k = 0, idx = 0; k < FFT_SIZE; k++, idx += 2) {
-                float a = fftInOut[idx];
-                float b = fftInOut[idx + 1];
-                float c = irFreq[idx];
-                float d = irFreq[idx + 1];
-                float real = a * c - b * d;
-                float imag = a * d + b * c;
-                fftInOut[idx] = real;
-                fftInOut[idx + 1] = imag;
-            }
-
-            // Inverse FFT -> time domain (real samples in indices 0..FFT_SIZE-1)
-            ifft.backwardsTransform(fftInOut);
-
-            // Extract valid linear-convolution output: indices overlapSize .. overlapSize + N_FRAMES - 1
-            for (int i = 0; i < N_FRAMES; i++) {
-                float proc = fftInOut[overlapSize + i]; // processed (wet) sample
-                float in = work0[i];                  // original (dry) sample
-                float mixed = dryGain * in + wetGain * proc;
-                work1[i] = mixed;
-            }
+            final int frames = Math.min(mono.limit(), FFT_SIZE);
 
-            // Write mixed result back into buffers using direct put(index)
-            FloatBuffer outBuf = mono.duplicate();
-            FloatBuffer stereoOut = stereo.duplicate();
-            outBuf.rewind();
-            stereoOut.rewind();
-            for (int i = 0; i < N_FRAMES; i++) {
-                outBuf.put(i, work1[i]);
-                stereoOut.put(i, work1[i]);
-            }
+            mono.get(0, work0, 0, frames);
+            convolve(frames);
+            mono.put(0, work1, 0, frames);
+            stereo.put(0, work1, 0, frames);
         }
 
-        /** Realtime Audio  Convolve Add */
-        public void process(FloatBuffer mono) {
+        /** Overlap-save: convolve <code>frames</code> samples of work0 into work1 (wet/dry mixed).
+         *  The FFT window is the last FFT_SIZE inputs, so any period up to FFT_SIZE works. */
+        private void convolve(int frames) {
             final float dryGain = 1.0f - wet;
             final float wetGain = wet;
 
-            // Read input block without disturbing caller's buffer position
-            FloatBuffer inBuf = mono.duplicate();
-            inBuf.rewind();
-            for (int i = 0; i < N_FRAMES; i++) {
-                work0[i] = inBuf.get(i);
-            }
+            // Slide the history window and append the new block
+            System.arraycopy(history, frames, history, 0, FFT_SIZE - frames);
+            System.arraycopy(work0, 0, history, FFT_SIZE - frames, frames);
 
             // Prepare FFT input (real time samples in indices 0..FFT_SIZE-1)
-            Arrays.fill(fftInOut, 0f);
-
-            // Compose the overlap-save input: [previous overlap | new block]
-            System.arraycopy(overlap, 0, fftInOut, 0, overlapSize);
-            System.arraycopy(work0, 0, fftInOut, overlapSize, N_FRAMES);
-
-            // Save next overlap for the following block: last (FFT_SIZE - N_FRAMES) samples of this composite input
-            System.arraycopy(fftInOut, N_FRAMES, overlap, 0, overlapSize);
+            Arrays.fill(fftInOut, FFT_SIZE, FFT_SIZE * 2, 0f);
+            System.arraycopy(history, 0, fftInOut, 0, FFT_SIZE);
 
             // Forward FFT (in-place, produces complex interleaved in fftInOut)
             fft.forwardTransform(fftInOut);
@@ -245,19 +201,21 @@ public abstract class JackConvolution implements JNAEffect {
             // Inverse FFT -> time domain (real samples in indices 0..FFT_SIZE-1)
             ifft.backwardsTransform(fftInOut);
 
-            // Mix wet/dry into work1 buffer
-            for (int i = 0; i < N_FRAMES; i++) {
-                float proc = fftInOut[overlapSize + i]; // processed (wet) sample
-                float in = work0[i];                    // original (dry) sample
+            // Valid linear-convolution output is the tail of the window
+            final int offset = FFT_SIZE - frames;
+            for (int i = 0; i < frames; i++) {
+                float proc = fftInOut[offset + i]; // processed (wet) sample
+                float in = work0[i];               // original (dry) sample
                 work1[i] = dryGain * in + wetGain * proc;
             }
+        }
 
-            // Write mixed result back into mono buffer using direct put(index)
-            FloatBuffer outBuf = mono.duplicate();
-            outBuf.rewind();
-            for (int i = 0; i < N_FRAMES; i++) {
-                outBuf.put(i, work1[i]);
-            }
+        /** Realtime Audio  Convolve Add */
+        public void process(FloatBuffer mono) {
+            final int frames = Math.min(mono.limit(), FFT_SIZE);
+            mono.get(0, work0, 0, frames);
+            convolve(frames);
+            mono.put(0, work1, 0, frames);
         }
     }
 
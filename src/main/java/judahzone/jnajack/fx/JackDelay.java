@@ -93,6 +93,8 @@ public class JackDelay implements JNATime, RTEffect {
     /** in seconds */
     private float delayTime;
     private float calculated; // delay in samples
+    private final float maxDelay;
+    private int sampleRate = SAMPLE_RATE;
     @Getter private float feedback = 0.36f;
     private final VariableDelayOp left;
     private final VariableDelayOp right;
@@ -104,6 +106,7 @@ public class JackDelay implements JNATime, RTEffect {
     }
 
     public JackDelay(float maxdelay) {
+        maxDelay = maxdelay;
         int delayBufSize = (int) (maxdelay * SAMPLE_RATE) + 10;
         left = new VariableDelayOp(delayBufSize);
         right = new VariableDelayOp(delayBufSize);
@@ -148,7 +151,7 @@ public class JackDelay implements JNATime, RTEffect {
 
     public void setDelayTime(float msec) {
         delayTime = msec;
-        calculated = delayTime * SAMPLE_RATE;
+        calculated = delayTime * sampleRate;
     }
 
     /** @return delay time in seconds */
@@ -163,6 +166,18 @@ public class JackDelay implements JNATime, RTEffect {
         this.feedback = feedback;
     }
 
+    /** new server rate: same delay time (and max delay) in seconds, new line length in samples */
+    @Override
+    public void prepare(int rate, int maxFrames) {
+        if (rate == sampleRate) return;
+        sampleRate = rate;
+        int delayBufSize = (int) (maxDelay * rate) + 10;
+        left.workArea = new float[delayBufSize];
+        right.workArea = new float[delayBufSize];
+        setDelayTime(delayTime);
+        reset();
+    }
+
     @Override
 	public void reset() {
         if (left.workArea != null)
@@ -217,6 +232,7 @@ public class JackDelay implements JNATime, RTEffect {
         void process(FloatBuffer in) {
 
             in.rewind();
+            final int frames = in.limit();
             float ldelay = lastdelay; // smoothed delay (samples)
             float fb = feedback;
             float[] work = workArea;
@@ -230,7 +246,7 @@ public class JackDelay implements JNATime, RTEffect {
             float r, s, a, b, o;
             int ri;
             float scratch;
-            for (int i = 0; i < N_FRAMES; i++) {
+            for (int i = 0; i < frames; i++) {
                 // smooth one sample towards target delay
                 ldelay += (target - ldelay) * smoothAlpha;
 
@@ -270,6 +286,7 @@ public class JackDelay implements JNATime, RTEffect {
 
         void slapback(FloatBuffer in) {
             in.rewind();
+            final int frames = in.limit();
             float ldelay = lastdelay;
             float fb = feedback;
             int rnlen = workArea.length;
@@ -278,7 +295,7 @@ public class JackDelay implements JNATime, RTEffect {
 
             float r, s, a, b, o;
             int ri;
-            for (int i = 0; i < N_FRAMES; i++) {
+            for (int i = 0; i < frames; i++) {
                 ldelay += (target - ldelay) * smoothAlpha;
 
                 r = pos - (ldelay + 2f) + rnlen;
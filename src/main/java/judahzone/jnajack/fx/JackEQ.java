@@ -122,6 +122,11 @@ public class JackEQ implements RTEffect {
 	    return stereo.get(band.ordinal()).gain_db;
 	}
 
+	@Override public void prepare(int sampleRate, int maxFrames) {
+		for (JackBiquad filter : stereo)
+			filter.prepare(sampleRate, maxFrames);
+	}
+
 	@Override public void process(FloatBuffer left, FloatBuffer right) {
 		for (JackBiquad filter : stereo)
 			filter.process(left, right);
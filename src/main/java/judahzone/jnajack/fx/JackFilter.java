@@ -81,6 +81,10 @@ public class JackFilter implements RTEffect {
 		throw new InvalidParameterException("" + idx);
 	}
 
+	@Override public void prepare(int sampleRate, int maxFrames) {
+		filter.prepare(sampleRate, maxFrames);
+	}
+
 	@Override public void process(FloatBuffer left, FloatBuffer right) {
 		filter.process(left, right);
 	}
@@ -30,6 +30,10 @@ public final class JackFreeverb extends JackReverb {
     private static final float initialwet = 0.4f;
     private static final float initialdry = 0.5f;//1;
     private static final float initialwidth = 0.9f;
+    /** comb/allpass tunings below are in samples at this rate */
+    private static final int TUNED_RATE = 44100;
+    private static final int[] COMB_TUNING = { 1111, 1203, 1273, 1373, 1424, 1477, 1548, 1593, 1659, 1694, 1727, 1760 };
+    private static final int[] ALLPASS_TUNING = {408,  616,   550, 467, 321, 239};
 
     private float roomsize;
     private float damp;
@@ -45,11 +49,10 @@ public final class JackFreeverb extends JackReverb {
     private int numallpasses;
     private Allpass[] allpassL;
     private Allpass[] allpassR;
-    //scratch buffers
-    private float[] inScratchL = new float[N_FRAMES];
-    private float[] inScratchR = new float[N_FRAMES];
-    private float[] outScratchL = new float[N_FRAMES];
-    private float[] outScratchR = new float[N_FRAMES];
+    private int sampleRate;
+    //scratch buffers {inL, inR, outL, outR, dryL, dryR}, swapped whole by prepare()
+    private static final int IN_L = 0, IN_R = 1, OUT_L = 2, OUT_R = 3, DRY_L = 4, DRY_R = 5, SCRATCH = 6;
+    private volatile float[][] scratch = new float[SCRATCH][N_FRAMES];
 
     public JackFreeverb() {
         setWet(initialwet);
@@ -57,33 +60,42 @@ public final class JackFreeverb extends JackReverb {
         setDry(initialdry);
         setDamp(initialdamp);
         setWidth(initialwidth);
+        tune(SAMPLE_RATE);
+    }
+
+    /** (re)build the filter networks with tunings scaled to the sample rate, so room size
+     *  and decay sound the same at 44.1, 48 or 96 kHz */
+    private void tune(int rate) {
+        sampleRate = rate;
+        final float scale = rate / (float) TUNED_RATE;
 
-        int[] delays = { 1111, 1203, 1273, 1373, 1424, 1477, 1548, 1593, 1659, 1694, 1727, 1760 };
-        numcombs = delays.length;
-        combL = new Comb[numcombs];
-        combR = new Comb[numcombs];
+        Comb[] newCombL = new Comb[COMB_TUNING.length];
+        Comb[] newCombR = new Comb[COMB_TUNING.length];
         // create R delays slightly offset to decorrelate channels
         final int rightOffset = 23;
-        for (int i = 0; i < numcombs; i++) {
-            combL[i] = new Comb(delays[i]);
-            combR[i] = new Comb(delays[i] + rightOffset);
+        for (int i = 0; i < newCombL.length; i++) {
+            newCombL[i] = new Comb(Math.round(COMB_TUNING[i] * scale));
+            newCombR[i] = new Comb(Math.round((COMB_TUNING[i] + rightOffset) * scale));
         }
 
-        int[] tuning = {408,  616,   550, 467, 321, 239};
-        numallpasses = tuning.length;
-        allpassL = new Allpass[numallpasses];
-        allpassR = new Allpass[numallpasses];
-        for (int i = 0; i < numallpasses; i++) {
-            int sizeL = tuning[i];
+        Allpass[] newAllpassL = new Allpass[ALLPASS_TUNING.length];
+        Allpass[] newAllpassR = new Allpass[ALLPASS_TUNING.length];
+        for (int i = 0; i < newAllpassL.length; i++) {
+            int sizeL = ALLPASS_TUNING[i];
             int sizeR = Math.max(1, sizeL + (i % 2 == 0 ? 11 : -7)); // small allpassR decorrelation
-            allpassL[i] = new Allpass(sizeL);
-            allpassR[i] = new Allpass(sizeR);
-        }
-        for (int i = 0; i < numallpasses; i++) {
-            allpassL[i].setFeedback(0.6f);
-            allpassR[i].setFeedback(0.6f);
+            newAllpassL[i] = new Allpass(Math.round(sizeL * scale));
+            newAllpassR[i] = new Allpass(Math.round(sizeR * scale));
+            newAllpassL[i].setFeedback(0.6f);
+            newAllpassR[i].setFeedback(0.6f);
         }
 
+        combL = newCombL;
+        combR = newCombR;
+        numcombs = newCombL.length;
+        allpassL = newAllpassL;
+        allpassR = newAllpassR;
+        numallpasses = newAllpassL.length;
+
         // prepare all buffers!
         dirty = true;
     }
@@ -174,6 +186,15 @@ public final class JackFreeverb extends JackReverb {
     	dirty = true;
     }
 
+    /** JACK callbacks arrive with processing suspended, so the networks are rebuilt in place */
+    @Override
+    public void prepare(int rate, int maxFrames) {
+        if (rate != sampleRate)
+            tune(rate);
+        if (scratch[IN_L].length != maxFrames)
+            scratch = new float[SCRATCH][maxFrames];
+    }
+
     private void update() {
         for (int i = 0; i < numcombs; i++) {
             combL[i].setFeedback(roomsize);
@@ -196,33 +217,43 @@ public final class JackFreeverb extends JackReverb {
         left.rewind();
         right.rewind();
         if (dirty) update();
+        final float[][] work = scratch;
+        final float[] inScratchL = work[IN_L];
+        final float[] inScratchR = work[IN_R];
+        final float[] outScratchL = work[OUT_L];
+        final float[] outScratchR = work[OUT_R];
+        final float[] dryL = work[DRY_L];
+        final float[] dryR = work[DRY_R];
+        final int frames = Math.min(Math.min(left.limit(), right.limit()), inScratchL.length);
+        left.get(0, dryL, 0, frames);
+        right.get(0, dryR, 0, frames);
 
         float ourGain = fixedgain;
-        for (int i = 0; i < N_FRAMES; i++) {
-            inScratchL[i] = left.get(i) * ourGain;
-            inScratchR[i] = right.get(i) * ourGain;
+        for (int i = 0; i < frames; i++) {
+            inScratchL[i] = dryL[i] * ourGain;
+            inScratchR[i] = dryR[i] * ourGain;
         }
 
-        Arrays.fill(outScratchL, 0);
-        Arrays.fill(outScratchR, 0);
+        Arrays.fill(outScratchL, 0, frames, 0);
+        Arrays.fill(outScratchR, 0, frames, 0);
 
         // ---- Run the first couple of allpass filters as pre-diffusion ----
         final int preAllpasses = Math.min(2, numallpasses);
         for (int i = 0; i < preAllpasses; i++) {
-            allpassL[i].processReplace(inScratchL, inScratchL);
-            allpassR[i].processReplace(inScratchR, inScratchR);
+            allpassL[i].processReplace(inScratchL, inScratchL, frames);
+            allpassR[i].processReplace(inScratchR, inScratchR, frames);
         }
 
         // Run combs on the diffused input
         for (int i = 0; i < numcombs; i++) {
-            combL[i].processMix(inScratchL, outScratchL);
-            combR[i].processMix(inScratchR, outScratchR);
+            combL[i].processMix(inScratchL, outScratchL, frames);
+            combR[i].processMix(inScratchR, outScratchR, frames);
         }
 
         // ---- Run any remaining allpasses as post-diffusion (as before) ----
         for (int i = preAllpasses; i < numallpasses; i++) {
-            allpassL[i].processReplace(outScratchL, outScratchL);
-            allpassR[i].processReplace(outScratchR, outScratchR);
+            allpassL[i].processReplace(outScratchL, outScratchL, frames);
+            allpassR[i].processReplace(outScratchR, outScratchR, frames);
         }
 
         // compute width mixes
@@ -232,43 +263,45 @@ public final class JackFreeverb extends JackReverb {
         float wet2 = wet * ((1.0f - width) / 2.0f);
 
         // write back outputs with wet/dry + stereo width cross-mix
-        for (int i = 0; i < N_FRAMES; i++) {
-            float inL = left.get(i);
-            float inR = right.get(i);
+        for (int i = 0; i < frames; i++) {
             float reverbL = outScratchL[i];
             float reverbR = outScratchR[i];
-
-            float outL = inL + reverbL * wet1 + reverbR * wet2;
-            float outR = inR + reverbR * wet1 + reverbL * wet2;
-
-            left.put(i, outL);
-            right.put(i, outR);
+            dryL[i] += reverbL * wet1 + reverbR * wet2;
+            dryR[i] += reverbR * wet1 + reverbL * wet2;
         }
+        left.put(0, dryL, 0, frames);
+        right.put(0, dryR, 0, frames);
     }
 
     private void processMono(FloatBuffer buf) {
         buf.rewind();
         if (dirty) update();
+        final float[][] scratch = this.scratch;
+        final float[] inScratchL = scratch[IN_L];
+        final float[] dry = scratch[DRY_L];
+        final int frames = Math.min(buf.limit(), inScratchL.length);
+        buf.get(0, dry, 0, frames);
 
         float ourGain = fixedgain;
-        for (int i = 0; i < N_FRAMES; i++)
-            inScratchL[i] = buf.get(i) * ourGain;
+        for (int i = 0; i < frames; i++)
+            inScratchL[i] = dry[i] * ourGain;
 
-        float[] work = outScratchL;
-        Arrays.fill(work, 0);
+        float[] work = scratch[OUT_L];
+        Arrays.fill(work, 0, frames, 0);
 
         final int preAllpasses = Math.min(2, numallpasses);
         for (int i = 0; i < preAllpasses; i++)
-            allpassL[i].processReplace(inScratchL, inScratchL);
+            allpassL[i].processReplace(inScratchL, inScratchL, frames);
 
         for (int i = 0; i < numcombs; i++)
-            combL[i].processMix(inScratchL, work);
+            combL[i].processMix(inScratchL, work, frames);
 
         for (int i = preAllpasses; i < numallpasses; i++)
-            allpassL[i].processReplace(work, work);
+            allpassL[i].processReplace(work, work, frames);
 
-        for (int i = 0; i < N_FRAMES; i++)
-            buf.put(i, buf.get(i) + work[i] * wet); // simple mono wet
+        for (int i = 0; i < frames; i++)
+            dry[i] += work[i] * wet; // simple mono wet
+        buf.put(0, dry, 0, frames);
     }
 
     private class Comb {
@@ -292,8 +325,8 @@ public final class JackFreeverb extends JackReverb {
             filterstore = 0;
         }
 
-        public void processMix(float inputs[], float outputs[]) {
-            for (int i = 0; i < N_FRAMES; i++) {
+        public void processMix(float inputs[], float outputs[], int frames) {
+            for (int i = 0; i < frames; i++) {
                 float output = buffer[bufidx];
 
                 // undenormalise
@@ -342,9 +375,9 @@ public final class JackFreeverb extends JackReverb {
             bufidx = 0;
         }
 
-        public void processReplace(float inputs[], float outputs[]) {
+        public void processReplace(float inputs[], float outputs[], int frames) {
             float input;
-            for (int i = 0; i < N_FRAMES; i++) {
+            for (int i = 0; i < frames; i++) {
 
                 // undenormalise
                 if (buffer[bufidx] > 0 && buffer[bufidx] < 1.0E-9)
@@ -4,7 +4,6 @@ import java.nio.FloatBuffer;
 import java.security.InvalidParameterException;
 
 import judahzone.jnajack.fx.JNAEffect.RTEffect;
-import judahzone.util.Constants;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -148,8 +147,8 @@ public void preamp(FloatBuffer left, FloatBuffer right) {
     float targetL = getLeft();
     float targetR = getRight();
 
-    ramp(left,  Constants.bufSize(), preCurrentL, targetL);
-    ramp(right, Constants.bufSize(), preCurrentR, targetR);
+    ramp(left,  left.limit(), preCurrentL, targetL);
+    ramp(right, right.limit(), preCurrentR, targetR);
 
     preCurrentL = targetL;
     preCurrentR = targetR;
@@ -159,13 +158,13 @@ public void preamp(FloatBuffer left, FloatBuffer right) {
 public void post(FloatBuffer left, FloatBuffer right) {
     float target = gain;
 
-    ramp(left,  Constants.bufSize(), postCurrent, target);
-    ramp(right, Constants.bufSize(), postCurrent, target);
+    ramp(left,  left.limit(), postCurrent, target);
+    ramp(right, right.limit(), postCurrent, target);
 
     postCurrent = target;
 }
 
-// apply a linear ramp from start→end over N_FRAMES samples
+// apply a linear ramp from start→end over the buffer's frames
 private static void ramp(FloatBuffer buf, int frames, float startGain, float endGain) {
     if (frames <= 0 || buf == null) {
         return;
@@ -53,8 +53,8 @@ public class JackMonoFilter implements JNAEffect {
     public enum Settings { Type, Frequency, Resonance }
     public static enum Type { HiCut, LoCut }
 
-    private final int BUF_SIZE; // anti-alias upsample-able
-    private final int SR; // anti-alias upsample-able
+    private final int upsample;
+    private int SR; // anti-alias upsample-able
 
     /** y = 1/30 * x ^ 2.81 + bassFloor */
 	public static float knobToFrequency(int val) {
@@ -81,7 +81,7 @@ public class JackMonoFilter implements JNAEffect {
     private final IIRFilter filter = new IIRFilter();
 
     public JackMonoFilter(Type type, float freq, int upsample) {
-    	BUF_SIZE = upsample * Constants.bufSize();
+    	this.upsample = upsample;
     	SR = upsample * Constants.sampleRate();
     	filterType = type;
     	setFrequency(freq);
@@ -117,6 +117,12 @@ public class JackMonoFilter implements JNAEffect {
         filter.dirty = true;
     }
 
+    /** Recompute coefficients for the (upsampled) server rate. */
+    @Override public void prepare(int sampleRate, int maxFrames) {
+    	SR = upsample * sampleRate;
+    	filter.dirty = true;
+    }
+
     /**Set resonance of filter in dB. <br/>
      * Recommended range (0 - 30)*/
     public void setResonance(float db) {
@@ -258,6 +264,9 @@ public class JackMonoFilter implements JNAEffect {
 
 	    private void filter2Replace(FloatBuffer data) {
 	    	data.rewind();
+	    	final int frames = data.limit(); // upsampled buffers arrive with upsample * period frames
+	    	if (frames == 0)
+	    		return;
 
 	        if (dirty) {
 	            filter2calc();
@@ -283,20 +292,20 @@ public class JackMonoFilter implements JNAEffect {
 	            double _b2 = this.last_b2;
 	            double _gain = this.last_gain;
 	            double _wet = this.last_wet;
-	            double a0_delta = (this.a0 - this.last_a0) / BUF_SIZE;
-	            double a1_delta = (this.a1 - this.last_a1) / BUF_SIZE;
-	            double a2_delta = (this.a2 - this.last_a2) / BUF_SIZE;
-	            double b1_delta = (this.b1 - this.last_b1) / BUF_SIZE;
-	            double b2_delta = (this.b2 - this.last_b2) / BUF_SIZE;
-	            double gain_delta = (this.gain - this.last_gain) / BUF_SIZE;
-	            double wet_delta = (this.wet - this.last_wet) / BUF_SIZE;
+	            double a0_delta = (this.a0 - this.last_a0) / frames;
+	            double a1_delta = (this.a1 - this.last_a1) / frames;
+	            double a2_delta = (this.a2 - this.last_a2) / frames;
+	            double b1_delta = (this.b1 - this.last_b1) / frames;
+	            double b2_delta = (this.b2 - this.last_b2) / frames;
+	            double gain_delta = (this.gain - this.last_gain) / frames;
+	            double wet_delta = (this.wet - this.last_wet) / frames;
 	            double _x1 = this.x1;
 	            double _x2 = this.x2;
 	            double _y1 = this.y1;
 	            double _y2 = this.y2;
 
 	            if (wet_delta != 0) {
-	                for (int i = 0; i < BUF_SIZE; i++) {
+	                for (int i = 0; i < frames; i++) {
 	                    _a0 += a0_delta;
 	                    _a1 += a1_delta;
 	                    _a2 += a2_delta;
@@ -314,7 +323,7 @@ public class JackMonoFilter implements JNAEffect {
 	                }
 	            } else if (a0_delta == 0 && a1_delta == 0 && a2_delta == 0
 	            		&& b1_delta == 0 && b2_delta == 0) {
-	                for (int i = 0; i < BUF_SIZE; i++) {
+	                for (int i = 0; i < frames; i++) {
 	                    double x = data.get(i);
 	                    double y = (_a0 * x + _a1 * _x1 + _a2 * _x2 - _b1 * _y1 - _b2 * _y2);
 	                    data.put( (float) (y * _gain) );
@@ -324,7 +333,7 @@ public class JackMonoFilter implements JNAEffect {
 	                    _y1 = y;
 	                }
 	            } else {
-	                for (int i = 0; i < BUF_SIZE; i++) {
+	                for (int i = 0; i < frames; i++) {
 	                    _a0 += a0_delta;
 	                    _a1 += a1_delta;
 	                    _a2 += a2_delta;
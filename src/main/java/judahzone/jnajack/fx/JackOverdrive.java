@@ -53,6 +53,7 @@ public class JackOverdrive implements RTEffect {
     /** Cached per‑sample function built whenever drive or algo changes. */
     private Waveshaper shaper = x -> x; // rebuildShaper()
     private static final float SAFETY_OUTPUT_CLAMP = 0.995f; // clamp outputs to +/-1.0
+    private float[] io = new float[N_FRAMES]; // one channel's block, bulk copied in and out
 
 
     @Override public int get(int idx) {
@@ -241,6 +242,11 @@ public class JackOverdrive implements RTEffect {
         }
     }
 
+    @Override public void prepare(int sampleRate, int maxFrames) {
+        if (io.length != maxFrames)
+            io = new float[maxFrames];
+    }
+
     @Override public void process(FloatBuffer left, FloatBuffer right) {
         process(left, true);
         process(right, false);
@@ -256,17 +262,19 @@ public class JackOverdrive implements RTEffect {
         final float algoGain = algo.makeupGain;
 
         buf.rewind();
+        final float[] data = io;
+        final int frames = Math.min(buf.limit(), data.length);
+        buf.get(0, data, 0, frames);
         if (clipping == 0) {
             // No clipping: just shape + gain
-            while (buf.hasRemaining()) {
-            	float y = waveShaper.apply(buf.get()) * algoGain;
-                y = Math.max(-SAFETY_OUTPUT_CLAMP, Math.min(SAFETY_OUTPUT_CLAMP, y));
-                buf.put(buf.position() - 1, y);
+            for (int i = 0; i < frames; i++) {
+            	float y = waveShaper.apply(data[i]) * algoGain;
+                data[i] = Math.max(-SAFETY_OUTPUT_CLAMP, Math.min(SAFETY_OUTPUT_CLAMP, y));
             }
         } else { // include clipping diode stage
             final float localDiode = this.diode;
-            while (buf.hasRemaining()) {
-                float x = buf.get();
+            for (int i = 0; i < frames; i++) {
+                float x = data[i];
                 float y = waveShaper.apply(x) * algoGain;
 
                 // diode limiting
@@ -274,9 +282,10 @@ public class JackOverdrive implements RTEffect {
                 // if y exceeds |max|: clip
                 if (Math.abs(y) > Math.abs(max))
                     y = max;
-                buf.put(buf.position() - 1, y);
+                data[i] = y;
             }
         }
+        buf.put(0, data, 0, frames);
     }
 }
 
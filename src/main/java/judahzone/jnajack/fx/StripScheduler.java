@@ -0,0 +1,125 @@
+package judahzone.jnajack.fx;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import judahzone.util.RTLogger;
+
+/** Spreads independent {@link ChannelStrip}s across pre-started worker threads inside one JACK
+    cycle, then sums every strip's work buffers into the bus on the calling (JACK) thread.
+    <p>Per cycle the caller fills each strip's {@link ChannelStrip#getLeft() left}/{@link ChannelStrip#getRight() right}
+    buffers and calls {@link #process}. Strips are claimed dynamically by the caller and the
+    workers, so one heavy strip doesn't stall a whole partition. Idle workers spin for
+    {@link #spinNanos} after their last cycle, then park until the next one. */
+public class StripScheduler implements AutoCloseable {
+
+	/** default time a worker keeps spinning before it parks */
+	public static final long SPIN_NANOS = 200_000;
+
+	private final ChannelStrip[] strips;
+	private final Worker[] workers;
+	private final long spinNanos;
+	/** next strip index to claim this cycle */
+	private final AtomicInteger next = new AtomicInteger(Integer.MAX_VALUE);
+	/** strips finished this cycle */
+	private final AtomicInteger done = new AtomicInteger();
+	/** cycle counter, the publication point for workers */
+	private volatile long cycle;
+	private volatile boolean running = true;
+
+	/** @param threads worker threads in addition to the caller */
+	public StripScheduler(List<? extends ChannelStrip> strips, int threads) {
+		this(strips, threads, SPIN_NANOS);
+	}
+
+	public StripScheduler(List<? extends ChannelStrip> strips, int threads, long spinNanos) {
+		this.strips = strips.toArray(new ChannelStrip[0]);
+		this.spinNanos = spinNanos;
+		workers = new Worker[Math.max(0, threads)];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker("StripScheduler-" + i);
+			workers[i].start();
+		}
+	}
+
+	/** JACK thread: process every strip (in parallel) and mix their buffers into the bus */
+	public void process(FloatBuffer busL, FloatBuffer busR) {
+		final int n = strips.length;
+		done.set(0);
+		next.set(0);
+		cycle++;
+		for (Worker w : workers)
+			if (w.parked)
+				LockSupport.unpark(w);
+
+		work();
+		while (done.get() < n)
+			Thread.onSpinWait();
+
+		for (ChannelStrip strip : strips) {
+			mix(strip.getLeft(), busL);
+			mix(strip.getRight(), busR);
+		}
+	}
+
+	/** claim and process strips until none are left this cycle */
+	private void work() {
+		final int n = strips.length;
+		int idx;
+		while ((idx = next.getAndIncrement()) < n) {
+			ChannelStrip strip = strips[idx];
+			try {
+				strip.process(strip.getLeft(), strip.getRight());
+			} catch (Throwable t) {
+				RTLogger.warn(strip, t);
+			} finally {
+				done.incrementAndGet();
+			}
+		}
+	}
+
+	private static void mix(FloatBuffer in, FloatBuffer out) {
+		int frames = Math.min(in.limit(), out.limit());
+		for (int i = 0; i < frames; i++)
+			out.put(i, out.get(i) + in.get(i));
+	}
+
+	@Override public void close() {
+		running = false;
+		for (Worker w : workers)
+			LockSupport.unpark(w);
+	}
+
+	private class Worker extends Thread {
+		volatile boolean parked;
+
+		Worker(String name) {
+			super(name);
+			setDaemon(true);
+			setPriority(Thread.MAX_PRIORITY);
+		}
+
+		@Override public void run() {
+			long seen = cycle;
+			long idleSince = System.nanoTime();
+			while (running) {
+				long current = cycle;
+				if (current != seen) {
+					seen = current;
+					work();
+					idleSince = System.nanoTime();
+				} else if (System.nanoTime() - idleSince < spinNanos) {
+					Thread.onSpinWait();
+				} else {
+					parked = true;
+					if (cycle == seen && running) // re-check after announcing, caller unparks
+						LockSupport.park(this);
+					parked = false;
+				}
+			}
+		}
+	}
+
+}